@@ -0,0 +1,604 @@
+package com.ing;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.*;
+
+@Getter
+@Setter
+@ToString
+public class CombatArea {
+    public final static int HITPOINTS = 200;
+    private static final int GOBLIN_ATTACK_POWER = 3;
+    @ToString.Exclude
+    public final char WALL = '#';
+    @ToString.Exclude
+    public final char OPEN_AREA = '.';
+    @ToString.Exclude
+    public final char GOBLIN = 'G';
+    @ToString.Exclude
+    public final char ELF = 'E';
+    private Grid combatArea;
+    private int elfAttackPower = 3;
+    @ToString.Exclude
+    private PathFinder pathFinder;
+    // the units as struct of arrays, indexed by unit number (0..nrUnits-1), dead units keep their number
+    private int nrUnits = 0;
+    @ToString.Exclude
+    private int[] unitX = new int[16];
+    @ToString.Exclude
+    private int[] unitY = new int[16];
+    @ToString.Exclude
+    private int[] unitHitPoints = new int[16];
+    @ToString.Exclude
+    private int[] unitAttackPower = new int[16];
+    // ELF or GOBLIN
+    @ToString.Exclude
+    private char[] unitFaction = new char[16];
+    @ToString.Exclude
+    private boolean[] unitAlive = new boolean[16];
+    // living units per faction
+    private int nrElfs = 0;
+    private int nrGoblins = 0;
+    // unit numbers in turn order, sorted in place at the start of every round (dead units are dropped then)
+    @ToString.Exclude
+    private int[] turnOrder = new int[16];
+    @ToString.Exclude
+    private int nrInTurnOrder = 0;
+    // per cell (y * width + x) the unit number + 1 of the unit on it or 0
+    @ToString.Exclude
+    private int[] occupancy;
+    // per cell: open area without a unit, kept up to date on every move and death
+    @ToString.Exclude
+    private boolean[] free;
+    // print the progress of the battle, when false the battle is headless and only the listener (if any) is notified
+    @ToString.Exclude
+    private boolean verbose = true;
+    @ToString.Exclude
+    private BattleListener listener;
+    // completed rounds of the last battle
+    private int rounds = 0;
+    // turns taken by living units
+    private long turnsTaken = 0;
+
+    public CombatArea(int x, int y) {
+        // squares not in the input (short lines) stay ' '
+        combatArea = new Grid(x, y, new Grid.CellCodec(" " + OPEN_AREA + WALL));
+        occupancy = new int[x * y];
+        free = new boolean[x * y];
+    }
+
+    /**
+     * @return the combat area of the lines in the puzzle input format
+     */
+    public static CombatArea of(List<String> lines) {
+        int maxX = lines.stream()
+                .mapToInt(String::length)
+                .max().orElse(0);
+        CombatArea combatArea = new CombatArea(maxX, lines.size());
+        for (int y = 0; y < lines.size(); y++) {
+            for (int x = 0; x < lines.get(y).length(); x++) {
+                combatArea.addElement(x, y, lines.get(y).charAt(x));
+            }
+        }
+        return combatArea;
+    }
+
+    /**
+     * Copy of a (not yet battled) combat area with the same units, the Elfs get the given attack power.
+     */
+    public CombatArea(CombatArea template, int elfAttackPower) {
+        combatArea = new Grid(template.combatArea);
+        occupancy = template.occupancy.clone();
+        free = template.free.clone();
+        this.elfAttackPower = elfAttackPower;
+        nrUnits = template.nrUnits;
+        unitX = template.unitX.clone();
+        unitY = template.unitY.clone();
+        unitHitPoints = template.unitHitPoints.clone();
+        unitAttackPower = template.unitAttackPower.clone();
+        unitFaction = template.unitFaction.clone();
+        unitAlive = template.unitAlive.clone();
+        nrElfs = template.nrElfs;
+        nrGoblins = template.nrGoblins;
+        turnOrder = template.turnOrder.clone();
+        nrInTurnOrder = template.nrInTurnOrder;
+        for (int unit = 0; unit < nrUnits; unit++) {
+            if (unitFaction[unit] == ELF) unitAttackPower[unit] = elfAttackPower;
+        }
+    }
+
+    public int getX(int unit) {
+        return unitX[unit];
+    }
+
+    public int getY(int unit) {
+        return unitY[unit];
+    }
+
+    public int getHitPoints(int unit) {
+        return unitHitPoints[unit];
+    }
+
+    public boolean isElf(int unit) {
+        return unitFaction[unit] == ELF;
+    }
+
+    public boolean isAlive(int unit) {
+        return unitAlive[unit];
+    }
+
+    private boolean isEnemy(int unit, int other) {
+        return unitFaction[unit] != unitFaction[other];
+    }
+
+    /**
+     * @return the sum of the hit points of the living units
+     */
+    private int hitPointsSum() {
+        int sum = 0;
+        for (int unit = 0; unit < nrUnits; unit++) {
+            if (unitAlive[unit]) sum += unitHitPoints[unit];
+        }
+        return sum;
+    }
+
+    /**
+     * @return the outcome: completed rounds * the sum of the hit points of the remaining units
+     */
+    public int outcome() {
+        return rounds * hitPointsSum();
+    }
+
+    public void print() {
+        System.out.print(render());
+    }
+
+    /**
+     * @return the combat area with per row the units and their hit points, rendered in one buffer
+     */
+    public String render() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("    ");
+        for (int x = 0; x < width(); x++) {
+            sb.append(x % 10);
+        }
+        sb.append(System.lineSeparator());
+
+        for (int y = 0; y < height(); y++) {
+            sb.append(String.format("%03d ", y));
+            for (int x = 0; x < width(); x++) {
+                int cell = y * width() + x;
+                sb.append(occupancy[cell] == 0 ? combatArea.get(x, y) : unitFaction[occupancy[cell] - 1]);
+            }
+            // print elfs/goblins, the cells of a row are in reading order
+            sb.append(' ');
+            for (int x = 0; x < width(); x++) {
+                int cell = y * width() + x;
+                if (occupancy[cell] != 0) {
+                    int unit = occupancy[cell] - 1;
+                    sb.append(unitFaction[unit]).append('(').append(unitHitPoints[unit]).append(") ");
+                }
+            }
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sorts the turn order in place on the positions of the units (reading order) and drops the dead units.
+     * Between rounds the units move at most 1 square, so the order is almost sorted: insertion sort.
+     */
+    private void sortTurnOrder() {
+        int n = 0;
+        for (int i = 0; i < nrInTurnOrder; i++) {
+            int unit = turnOrder[i];
+            if (!unitAlive[unit]) continue;
+            int key = cell(unit);
+            int j = n;
+            while (j > 0 && cell(turnOrder[j - 1]) > key) {
+                turnOrder[j] = turnOrder[j - 1];
+                j--;
+            }
+            turnOrder[j] = unit;
+            n++;
+        }
+        nrInTurnOrder = n;
+    }
+
+    /**
+     * @return the living units in reading order
+     */
+    int[] unitsInTurnOrder() {
+        sortTurnOrder();
+        return Arrays.copyOf(turnOrder, nrInTurnOrder);
+    }
+
+    public void takeTurn(int unit) {
+        //  check if this unit has not been killed already during this round
+        if (!unitAlive[unit]) {
+            if (verbose) System.out.println("unit has already been killed: " + unitFaction[unit] + " at x/y: " + unitX[unit] + "/" + unitY[unit]);
+            return;
+        }
+        turnsTaken++;
+
+        // attack immediately if possible
+        //  otherwise move and then attack if possible
+        int enemy = canAttack(unit);
+        if (enemy >= 0) {
+            attack(unit, enemy);
+        } else if (canMove(unit)) {
+            moveAlt(unit);
+            enemy = canAttack(unit);
+            if (enemy >= 0) {
+                attack(unit, enemy);
+            }
+        }
+    }
+
+    private void attack(int attacker, int victim) {
+        unitHitPoints[victim] -= unitAttackPower[attacker];
+        if (listener != null) listener.onAttack(attacker, victim, unitAttackPower[attacker]);
+
+        if (unitHitPoints[victim] <= 0) {
+            // victim dead, mark as dead and free its square
+            unitAlive[victim] = false;
+            occupancy[cell(victim)] = 0;
+            free[cell(victim)] = true;
+            if (unitFaction[victim] == ELF) {
+                nrElfs--;
+            } else {
+                nrGoblins--;
+            }
+            if (listener != null) listener.onDeath(victim);
+        }
+    }
+
+    void moveAlt(int unit) {
+        PathFinder pathFinder = pathFinder();
+        boolean[] target = pathFinder.getTarget();
+        int from = cell(unit);
+
+        // the free squares around all enemies are the targets
+        for (int enemy = 0; enemy < nrUnits; enemy++) {
+            if (unitAlive[enemy] && isEnemy(unit, enemy)) markFreeNeighbours(cell(enemy), free, target, true);
+        }
+        // 1 breadth first search from the unit: nearest target, ties in reading order
+        int chosenEnemyNeighbourSquare = pathFinder.nearest(from, free, target);
+        for (int enemy = 0; enemy < nrUnits; enemy++) {
+            if (unitAlive[enemy] && isEnemy(unit, enemy)) markFreeNeighbours(cell(enemy), free, target, false);
+        }
+
+        if (chosenEnemyNeighbourSquare >= 0) {
+            // 1 breadth first search back from the chosen target: our nearest neighbour square, ties in reading order
+            markFreeNeighbours(from, free, target, true);
+            int chosenMyNeighbourSquare = pathFinder.nearest(chosenEnemyNeighbourSquare, free, target);
+            markFreeNeighbours(from, free, target, false);
+
+            if (chosenMyNeighbourSquare >= 0) {
+                // move
+                moveTo(unit, chosenMyNeighbourSquare);
+            }
+        }
+    }
+
+    private void markFreeNeighbours(int cell, boolean[] free, boolean[] target, boolean mark) {
+        int x = cell % width();
+        if (x > 0 && free[cell - 1]) target[cell - 1] = mark;
+        if (x < width() - 1 && free[cell + 1]) target[cell + 1] = mark;
+        if (cell >= width() && free[cell - width()]) target[cell - width()] = mark;
+        if (cell + width() < free.length && free[cell + width()]) target[cell + width()] = mark;
+    }
+
+    private void moveTo(int unit, int cell) {
+        int fromX = unitX[unit];
+        int fromY = unitY[unit];
+        occupancy[cell(unit)] = 0;
+        free[cell(unit)] = true;
+        unitX[unit] = cell % width();
+        unitY[unit] = cell / width();
+        occupancy[cell] = unit + 1;
+        free[cell] = false;
+        if (listener != null) listener.onMove(unit, fromX, fromY);
+    }
+
+    private PathFinder pathFinder() {
+        if (pathFinder == null) {
+            pathFinder = new PathFinder(width(), height());
+        }
+        return pathFinder;
+    }
+
+    private int width() {
+        return combatArea.getWidth();
+    }
+
+    private int height() {
+        return combatArea.getHeight();
+    }
+
+    private int cell(Square square) {
+        return square.getY() * width() + square.getX();
+    }
+
+    private int cell(int unit) {
+        return unitY[unit] * width() + unitX[unit];
+    }
+
+    /**
+     * @return the enemy unit on an adjacent square with the fewest hit points, then first in reading order, or -1
+     */
+    private int canAttack(int unit) {
+        int enemy = -1;
+        int cell = cell(unit);
+        // neighbours in reading order, so only strictly fewer hit points replace a found enemy
+        int[] neighbours = {cell - width(), unitX[unit] > 0 ? cell - 1 : -1, unitX[unit] < width() - 1 ? cell + 1 : -1, cell + width()};
+        for (int neighbour : neighbours) {
+            if (neighbour >= 0 && neighbour < occupancy.length && occupancy[neighbour] != 0) {
+                int other = occupancy[neighbour] - 1;
+                if (isEnemy(unit, other) && (enemy < 0 || unitHitPoints[other] < unitHitPoints[enemy])) {
+                    enemy = other;
+                }
+            }
+        }
+        return enemy;
+    }
+
+    private boolean isFreeSquare(int x, int y) {
+        return isValidSquare(x, y) && free[y * width() + x];
+    }
+
+    /**
+     * @return the length of a shortest path over the free squares from src to dst, or -1 when there is none
+     */
+    public int calculateShortestDistance(Square src, Square dst) {
+        // breadth first search from the destination over the free squares to the source
+        PathFinder pathFinder = pathFinder();
+        boolean[] target = pathFinder.getTarget();
+        target[cell(src)] = true;
+        int found = pathFinder.nearest(cell(dst), free, target);
+        target[cell(src)] = false;
+
+        return found < 0 ? -1 : pathFinder.getDistance();
+    }
+
+    private boolean isValidSquare(int x, int y) {
+        if (x < 0) return false;
+        if (y < 0) return false;
+        if (x >= combatArea.getWidth()) return false;
+        if (y >= combatArea.getHeight()) return false;
+        return true;
+    }
+
+    private boolean canMove(int unit) {
+        int x = unitX[unit];
+        int y = unitY[unit];
+        return isFreeSquare(x - 1, y) || isFreeSquare(x + 1, y) || isFreeSquare(x, y - 1) || isFreeSquare(x, y + 1);
+    }
+
+    public void addElement(int x, int y, char c) {
+        switch (c) {
+            case OPEN_AREA:
+                combatArea.set(x, y, c);
+                free[y * width() + x] = true;
+                break;
+            case WALL:
+                combatArea.set(x, y, c);
+                break;
+            case GOBLIN:
+                combatArea.set(x, y, OPEN_AREA);
+                addUnit(x, y, GOBLIN, GOBLIN_ATTACK_POWER);
+                break;
+            case ELF:
+                combatArea.set(x, y, OPEN_AREA);
+                addUnit(x, y, ELF, elfAttackPower);
+                break;
+            case ' ':
+                break;
+            default:
+                throw new IllegalArgumentException("unknown element: " + c);
+//                break;
+        }
+
+    }
+
+    private void addUnit(int x, int y, char faction, int attackPower) {
+        if (nrUnits == unitX.length) {
+            int capacity = 2 * nrUnits;
+            unitX = Arrays.copyOf(unitX, capacity);
+            unitY = Arrays.copyOf(unitY, capacity);
+            unitHitPoints = Arrays.copyOf(unitHitPoints, capacity);
+            unitAttackPower = Arrays.copyOf(unitAttackPower, capacity);
+            unitFaction = Arrays.copyOf(unitFaction, capacity);
+            unitAlive = Arrays.copyOf(unitAlive, capacity);
+            turnOrder = Arrays.copyOf(turnOrder, capacity);
+        }
+        int unit = nrUnits++;
+        unitX[unit] = x;
+        unitY[unit] = y;
+        unitHitPoints[unit] = HITPOINTS;
+        unitAttackPower[unit] = attackPower;
+        unitFaction[unit] = faction;
+        unitAlive[unit] = true;
+        turnOrder[nrInTurnOrder++] = unit;
+        occupancy[cell(unit)] = unit + 1;
+        if (faction == ELF) {
+            nrElfs++;
+        } else {
+            nrGoblins++;
+        }
+    }
+
+    public boolean battle() {
+        return battle(false);
+    }
+
+    public boolean battle(boolean stopWhenAnElfDies) {
+        boolean elfsWonWithoutLosses = false;
+        boolean battleFinished = false;
+        int turns = 0;
+
+        // nr of initial Elfs
+        int initialElfs = nrElfs;
+
+        while (!battleFinished) {
+            if (verbose) System.out.println("starting turn# " + (turns + 1));
+
+            sortTurnOrder();
+            // units killed during this round stay in the turn order until the next sort
+            for (int i = 0; i < nrInTurnOrder; i++) {
+                if (nrGoblins == 0
+                        || nrElfs == 0
+                        || (stopWhenAnElfDies && nrElfs != initialElfs)) {
+                    battleFinished = true;
+                } else {
+                    takeTurn(turnOrder[i]);
+                }
+            }
+
+            if (!battleFinished) {
+                turns++;
+                if (listener != null) listener.onRoundCompleted(turns);
+                if (verbose) {
+                    System.out.println("completed turn# " + turns);
+                    System.out.println("Round: " + turns);
+                }
+            }
+
+            if (verbose) print();
+        }
+        rounds = turns;
+        if (!verbose) {
+            return nrElfs == initialElfs;
+        }
+
+        System.out.println("\nbattle finished in " + turns + " turns...");
+
+        if (nrElfs > 0) {
+            System.out.println("ELF's WIN!");
+            System.out.println("remaining elfs: " + nrElfs);
+            int elfsSum = hitPointsSum();
+            System.out.println("elfsSum: " + elfsSum);
+            System.out.println("outcome (" + turns + " rounds * sum " + elfsSum + "): " + turns * elfsSum);
+        }
+
+        if (nrGoblins > 0) {
+            System.out.println("GOBLIN's WIN!");
+            System.out.println("remaining goblins: " + nrGoblins);
+            int goblinsSum = hitPointsSum();
+            System.out.println("goblinsSum: " + goblinsSum);
+            System.out.println("outcome (" + turns + " rounds * sum " + goblinsSum + "): " + turns * goblinsSum);
+        }
+
+        if (nrElfs == initialElfs) {
+            elfsWonWithoutLosses = true;
+        }
+        return elfsWonWithoutLosses;
+    }
+}
+
+/**
+ * Receives the events of a battle, also in headless mode. All methods default to doing nothing.
+ * The units are the unit numbers of the combat area.
+ */
+interface BattleListener {
+    /**
+     * Called after the unit moved one square, its position is already updated.
+     */
+    default void onMove(int unit, int fromX, int fromY) {
+    }
+
+    /**
+     * Called after the attack, the hit points of the victim are already lowered.
+     */
+    default void onAttack(int attacker, int victim, int damage) {
+    }
+
+    /**
+     * Called after the victim has been removed from the combat area.
+     */
+    default void onDeath(int victim) {
+    }
+
+    default void onRoundCompleted(int round) {
+    }
+}
+
+/**
+ * Breadth first search over a grid of cells (y * width + x, so a lower cell is earlier in reading order).
+ * The buffers are allocated once and reused between searches.
+ */
+class PathFinder {
+    private final int width;
+    private final int[] queue;
+    // a cell is visited in the current search when its mark equals the search number: no clearing between searches
+    private final int[] visited;
+    private int search = 0;
+    // buffer for the caller: the targets
+    @Getter
+    private final boolean[] target;
+    // distance of the last found target
+    @Getter
+    private int distance;
+
+    PathFinder(int width, int height) {
+        this.width = width;
+        this.queue = new int[width * height];
+        this.visited = new int[width * height];
+        this.target = new boolean[width * height];
+    }
+
+    /**
+     * Searches from the start over free cells (the start itself needs not be free) to the nearest targets,
+     * one distance layer at a time.
+     *
+     * @return the target at the smallest distance, first in reading order, or -1 when no target can be reached
+     */
+    public int nearest(int start, boolean[] free, boolean[] target) {
+        if (search == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            search = 0;
+        }
+        search++;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        visited[start] = search;
+        int layerDistance = 0;
+        while (head < tail) {
+            // the queue holds the complete layer
+            int layerEnd = tail;
+            int found = -1;
+            for (int i = head; i < layerEnd; i++) {
+                int cell = queue[i];
+                if (target[cell] && (found < 0 || cell < found)) {
+                    found = cell;
+                }
+            }
+            if (found >= 0) {
+                distance = layerDistance;
+                return found;
+            }
+            for (; head < layerEnd; head++) {
+                int cell = queue[head];
+                int x = cell % width;
+                if (x > 0) tail = visit(cell - 1, free, target, tail);
+                if (x < width - 1) tail = visit(cell + 1, free, target, tail);
+                if (cell >= width) tail = visit(cell - width, free, target, tail);
+                if (cell + width < queue.length) tail = visit(cell + width, free, target, tail);
+            }
+            layerDistance++;
+        }
+        return -1;
+    }
+
+    private int visit(int cell, boolean[] free, boolean[] target, int tail) {
+        if (visited[cell] != search && (free[cell] || target[cell])) {
+            visited[cell] = search;
+            queue[tail++] = cell;
+        }
+        return tail;
+    }
+}
@@ -0,0 +1,86 @@
+package com.ing;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Generates Day 15 maps (in the puzzle input format) from a seed.
+ * The map has walls around and random walls inside, only the largest connected open area is kept (the rest
+ * becomes wall) so every unit can reach every other unit.
+ */
+public class CombatMapGenerator {
+    private final Random random;
+
+    public CombatMapGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param wallDensity the fraction of the inner squares that is a wall, before removing unreachable areas
+     */
+    public List<String> generate(int width, int height, double wallDensity, int nrElfs, int nrGoblins) {
+        if (width < 3 || height < 3) {
+            throw new IllegalArgumentException("map should be at least 3x3: " + width + "x" + height);
+        }
+        char[][] map = new char[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean border = x == 0 || y == 0 || x == width - 1 || y == height - 1;
+                map[y][x] = border || random.nextDouble() < wallDensity ? '#' : '.';
+            }
+        }
+
+        List<Integer> open = largestOpenArea(map);
+        if (open.size() < nrElfs + nrGoblins) {
+            throw new IllegalArgumentException("not enough open squares (" + open.size() + ") for " + (nrElfs + nrGoblins) + " units");
+        }
+        // wall up all other open squares
+        boolean[] keep = new boolean[width * height];
+        open.forEach(cell -> keep[cell] = true);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (!keep[y * width + x]) map[y][x] = '#';
+            }
+        }
+
+        Collections.shuffle(open, random);
+        for (int i = 0; i < nrElfs + nrGoblins; i++) {
+            map[open.get(i) / width][open.get(i) % width] = i < nrElfs ? 'E' : 'G';
+        }
+        return Arrays.stream(map)
+                .map(String::new)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the cells (y * width + x) of the largest 4-connected open area
+     */
+    private List<Integer> largestOpenArea(char[][] map) {
+        int height = map.length;
+        int width = map[0].length;
+        boolean[] seen = new boolean[width * height];
+        List<Integer> largest = new ArrayList<>();
+        for (int start = 0; start < seen.length; start++) {
+            if (seen[start] || map[start / width][start % width] != '.') continue;
+            List<Integer> area = new ArrayList<>();
+            Deque<Integer> stack = new ArrayDeque<>();
+            stack.push(start);
+            seen[start] = true;
+            while (!stack.isEmpty()) {
+                int cell = stack.pop();
+                area.add(cell);
+                // the border is wall, so the neighbours are always inside the map
+                for (int neighbour : new int[]{cell - width, cell - 1, cell + 1, cell + width}) {
+                    if (!seen[neighbour] && map[neighbour / width][neighbour % width] == '.') {
+                        seen[neighbour] = true;
+                        stack.push(neighbour);
+                    }
+                }
+            }
+            if (area.size() > largest.size()) {
+                largest = area;
+            }
+        }
+        return largest;
+    }
+}
@@ -60,42 +60,42 @@ class TrackSystem {
     public final static char CURVE_RIGHT = '/';
     public final static char INTERSECTION = '+';
 
-    private static char[][] tracks;
+    private static Grid tracks;
     List<Cart> carts = new ArrayList<>();
 
     TrackSystem(int x, int y) {
-        tracks = new char[x][y];
+        tracks = new Grid(x, y, new Grid.CellCodec(" " + STRAIGHT_VERTICAL + STRAIGHT_HORIZONTAL + CURVE_LEFT + CURVE_RIGHT + INTERSECTION));
     }
 
     public void addElement(int x, int y, char c) {
         switch (c) {
             case ' ':
-                tracks[x][y] = ' ';
+                tracks.set(x, y, ' ');
                 break;
             case STRAIGHT_HORIZONTAL:
             case STRAIGHT_VERTICAL:
             case CURVE_LEFT:
             case CURVE_RIGHT:
-                tracks[x][y] = c;
+                tracks.set(x, y, c);
                 break;
             case '+':
-                tracks[x][y] = INTERSECTION;
+                tracks.set(x, y, INTERSECTION);
                 break;
             case '>':
                 carts.add(new Cart(x, y, RIGHT));
-                tracks[x][y] = STRAIGHT_HORIZONTAL;
+                tracks.set(x, y, STRAIGHT_HORIZONTAL);
                 break;
             case '<':
                 carts.add(new Cart(x, y, LEFT));
-                tracks[x][y] = STRAIGHT_HORIZONTAL;
+                tracks.set(x, y, STRAIGHT_HORIZONTAL);
                 break;
             case '^':
                 carts.add(new Cart(x, y, UP));
-                tracks[x][y] = STRAIGHT_VERTICAL;
+                tracks.set(x, y, STRAIGHT_VERTICAL);
                 break;
             case 'v':
                 carts.add(new Cart(x, y, DOWN));
-                tracks[x][y] = STRAIGHT_VERTICAL;
+                tracks.set(x, y, STRAIGHT_VERTICAL);
                 break;
             default:
                 throw new IllegalArgumentException("unknown element: " + c);
@@ -140,7 +140,7 @@ class TrackSystem {
     }
 
     private void updateCurrentDirection(Cart cart) {
-        char directions = tracks[(int) cart.getX()][(int) cart.getY()];
+        char directions = tracks.get((int) cart.getX(), (int) cart.getY());
         switch (directions) {
             case STRAIGHT_VERTICAL:
             case STRAIGHT_HORIZONTAL:
@@ -0,0 +1,168 @@
+package com.ing;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Measures the time and the allocations of a part of a benchmark operation, the setup is not measured.
+ */
+@Getter
+class BenchmarkTimer {
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private long nanos = 0;
+    private long ops = 0;
+    private long bytes = 0;
+    private long startNanos;
+    private long startBytes;
+
+    static long allocatedBytes() {
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public void start() {
+        startBytes = allocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    public void stop(long nrOps) {
+        nanos += System.nanoTime() - startNanos;
+        bytes += allocatedBytes() - startBytes;
+        ops += nrOps;
+    }
+}
+
+/**
+ * Benchmarks of the Day 15 combat engine: takeTurn, calculateShortestDistance, moveAlt and a full battle,
+ * on the puzzle input and on generated larger maps.
+ * Each benchmark runs warmup iterations and then measured iterations of a fixed duration and reports ns/op,
+ * bytes/op and the allocation rate of the measured parts (the benchmarks run on the main thread).
+ * <p>
+ * Usage: Day_15_Benchmark [input file] [benchmark name filter]
+ */
+public class Day_15_Benchmark {
+    private static final String FILENAME = "input_15.txt";
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 500_000_000L;
+    private static final long SEED = 15;
+
+    private static void benchmark(String name, Consumer<BenchmarkTimer> operation) {
+        double[] nsPerOp = new double[MEASUREMENT_ITERATIONS];
+        double[] bytesPerOp = new double[MEASUREMENT_ITERATIONS];
+        double mbPerSecond = 0;
+        for (int i = -WARMUP_ITERATIONS; i < MEASUREMENT_ITERATIONS; i++) {
+            BenchmarkTimer timer = new BenchmarkTimer();
+            long start = System.nanoTime();
+            // at least 1 operation per iteration
+            do {
+                operation.accept(timer);
+            } while (System.nanoTime() - start < ITERATION_NANOS);
+            if (i >= 0) {
+                nsPerOp[i] = (double) timer.getNanos() / timer.getOps();
+                bytesPerOp[i] = (double) timer.getBytes() / timer.getOps();
+                mbPerSecond += timer.getBytes() * 1000.0 / timer.getNanos() / MEASUREMENT_ITERATIONS;
+            }
+        }
+        System.out.println(String.format("%-45s %15.1f +- %12.1f ns/op %12.1f B/op %9.1f MB/s",
+                name, mean(nsPerOp), stdev(nsPerOp), mean(bytesPerOp), mbPerSecond));
+    }
+
+    private static double mean(double[] values) {
+        return Arrays.stream(values).average().orElse(0);
+    }
+
+    private static double stdev(double[] values) {
+        double mean = mean(values);
+        return Math.sqrt(Arrays.stream(values).map(v -> (v - mean) * (v - mean)).sum() / Math.max(1, values.length - 1));
+    }
+
+    private static boolean isFinished(CombatArea combatArea) {
+        return combatArea.getNrElfs() == 0 || combatArea.getNrGoblins() == 0;
+    }
+
+    private static void benchmarkMap(String mapName, CombatArea template, String filter) {
+        Map<String, Consumer<BenchmarkTimer>> benchmarks = new LinkedHashMap<>();
+
+        // 1 round of turns per operation, the battle continues over the operations and restarts when finished
+        CombatArea[] turnArea = {null};
+        benchmarks.put("takeTurn", timer -> {
+            if (turnArea[0] == null || isFinished(turnArea[0])) {
+                turnArea[0] = new CombatArea(template, template.getElfAttackPower());
+                turnArea[0].setVerbose(false);
+            }
+            int[] units = turnArea[0].unitsInTurnOrder();
+            timer.start();
+            for (int unit : units) {
+                turnArea[0].takeTurn(unit);
+            }
+            timer.stop(units.length);
+        });
+
+        // all units move once (from the start positions), in reading order
+        benchmarks.put("moveAlt", timer -> {
+            CombatArea combatArea = new CombatArea(template, template.getElfAttackPower());
+            combatArea.setVerbose(false);
+            int[] units = combatArea.unitsInTurnOrder();
+            timer.start();
+            for (int unit : units) {
+                combatArea.moveAlt(unit);
+            }
+            timer.stop(units.length);
+        });
+
+        // random pairs of open squares
+        List<Square> openSquares = new ArrayList<>();
+        for (int x = 0; x < template.getCombatArea().getWidth(); x++) {
+            for (int y = 0; y < template.getCombatArea().getHeight(); y++) {
+                if (template.getCombatArea().get(x, y) == template.OPEN_AREA) {
+                    openSquares.add(new Square(x, y));
+                }
+            }
+        }
+        Random random = new Random(SEED);
+        Square[][] pairs = new Square[1024][];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = new Square[]{openSquares.get(random.nextInt(openSquares.size())), openSquares.get(random.nextInt(openSquares.size()))};
+        }
+        CombatArea distanceArea = new CombatArea(template, template.getElfAttackPower());
+        int[] next = {0};
+        benchmarks.put("calculateShortestDistance", timer -> {
+            Square[] pair = pairs[next[0]++ % pairs.length];
+            timer.start();
+            distanceArea.calculateShortestDistance(pair[0], pair[1]);
+            timer.stop(1);
+        });
+
+        benchmarks.put("battle", timer -> {
+            CombatArea combatArea = new CombatArea(template, template.getElfAttackPower());
+            combatArea.setVerbose(false);
+            timer.start();
+            combatArea.battle();
+            timer.stop(1);
+        });
+
+        benchmarks.forEach((name, operation) -> {
+            String fullName = mapName + "." + name;
+            if (filter == null || fullName.contains(filter)) {
+                benchmark(fullName, operation);
+            }
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        String fileName = args.length > 0 ? args[0] : FILENAME;
+        String filter = args.length > 1 ? args[1] : null;
+
+        benchmarkMap(fileName, CombatArea.of(Files.lines(Paths.get(fileName)).collect(Collectors.toList())), filter);
+        benchmarkMap("generated_64x64", CombatArea.of(new CombatMapGenerator(SEED).generate(64, 64, 0.1, 30, 30)), filter);
+        benchmarkMap("generated_256x256", CombatArea.of(new CombatMapGenerator(SEED).generate(256, 256, 0.1, 200, 200)), filter);
+    }
+}
@@ -0,0 +1,70 @@
+package com.ing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Runs headless battles on generated maps of increasing size and prints the rounds per second, the time per turn
+ * and the peak heap usage. The number of units scales with the number of squares.
+ * <p>
+ * Usage: Day_15_Stress [wall density] [units per 1000 squares] [max size] [seed]
+ * <br>
+ * or: Day_15_Stress generate width height wall-density elfs goblins [seed] (prints the map)
+ */
+public class Day_15_Stress {
+    private static final double WALL_DENSITY = 0.15;
+    private static final int UNITS_PER_1000_SQUARES = 10;
+    private static final int MAX_SIZE = 256;
+    private static final long SEED = 15;
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .collect(Collectors.toList());
+    }
+
+    private static long peakHeap() {
+        return heapPools().stream()
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("generate")) {
+            new CombatMapGenerator(args.length > 6 ? Long.parseLong(args[6]) : SEED)
+                    .generate(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Double.parseDouble(args[3]),
+                            Integer.parseInt(args[4]), Integer.parseInt(args[5]))
+                    .forEach(System.out::println);
+            return;
+        }
+
+        double wallDensity = args.length > 0 ? Double.parseDouble(args[0]) : WALL_DENSITY;
+        int unitsPer1000Squares = args.length > 1 ? Integer.parseInt(args[1]) : UNITS_PER_1000_SQUARES;
+        int maxSize = args.length > 2 ? Integer.parseInt(args[2]) : MAX_SIZE;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : SEED;
+
+        System.out.println(String.format("%9s %6s %7s %10s %12s %14s %15s",
+                "size", "units", "rounds", "time (ms)", "rounds/s", "ns/turn", "peak heap (MB)"));
+        for (int size = 32; size <= maxSize; size *= 2) {
+            int nrUnits = Math.max(2, size * size * unitsPer1000Squares / 1000);
+            CombatArea combatArea = CombatArea.of(new CombatMapGenerator(seed)
+                    .generate(size, size, wallDensity, nrUnits / 2, nrUnits - nrUnits / 2));
+            combatArea.setVerbose(false);
+
+            System.gc();
+            heapPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+            long start = System.nanoTime();
+            combatArea.battle();
+            long nanos = System.nanoTime() - start;
+
+            System.out.println(String.format("%4dx%-4d %6d %7d %10d %12.1f %14.0f %15.1f",
+                    size, size, nrUnits, combatArea.getRounds(), nanos / 1_000_000,
+                    combatArea.getRounds() * 1e9 / nanos,
+                    (double) nanos / Math.max(1, combatArea.getTurnsTaken()),
+                    peakHeap() / (1024.0 * 1024.0)));
+        }
+    }
+}
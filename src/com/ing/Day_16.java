@@ -1,32 +1,48 @@
 package com.ing;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
 
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.LocalTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static java.util.stream.Collectors.toList;
 
-@FunctionalInterface
-interface OpCode {
-    /**
-     * Applies this opcode to the given input.
-     *
-     * @return the register result
-     */
-    int[] apply(int inputA, int inputB, int inputC);
-}
-
 class Device {
-    @Getter
-    public final Map<String, OpCode> operators = new TreeMap<>();
+    private static final long PROGRESS_INTERVAL = 1000 * 1000 * 100;
+
     @Getter
     @Setter
     public int registerAsInstructionPointer;
@@ -38,43 +54,43 @@ class Device {
     @Getter
     @Setter
     boolean printDebugging = false;
+    private final List<Watchpoint> watchpoints = new ArrayList<>();
+    // the number of instructions executed by the last (possibly resumed) run
+    @Getter
+    long instructionsExecuted = 0;
+    // write the registers every snapshotInterval instructions to this file, see resumeFromSnapshot and replay
     @Getter
     @Setter
-    boolean checkDay21Condition = false;
+    Path snapshotFile;
     @Getter
-    long day21Part1Output = -1;
+    @Setter
+    long snapshotInterval = 0;
+    // count hits and taken jumps per instruction, see getProfile
     @Getter
-    long day21Part2Output = -1;
+    @Setter
+    boolean profiling = false;
+    // the profile of the last run with profiling enabled
+    @Getter
+    ExecutionProfile profile;
+    // optionally run programs as generated bytecode instead of interpreting them
     @Getter
     @Setter
-    boolean day21PartTwo = false;
+    boolean jitEnabled = false;
+    // execute compare-and-skip/branch patterns as a single superinstruction
     @Getter
     @Setter
-    int day21InstructionNr = -1;
+    boolean fuseInstructions = true;
+    // replace recognized loops by a native computation
     @Getter
     @Setter
-    int registerWhichGetsComparedWithRegister0;
+    boolean accelerateLoops = true;
+    // the last jit compiled program, compilation is too expensive to repeat for every run
+    private CompiledProgram jitSource;
+    private Optional<JitProgram> jitProgram = Optional.empty();
 
     public Device(int nrRegisters) {
         register = new int[nrRegisters];
         clearRegister();
-
-        operators.put("addr", this::addr);
-        operators.put("addi", this::addi);
-        operators.put("mulr", this::mulr);
-        operators.put("muli", this::muli);
-        operators.put("banr", this::banr);
-        operators.put("bani", this::bani);
-        operators.put("borr", this::borr);
-        operators.put("bori", this::bori);
-        operators.put("setr", this::setr);
-        operators.put("seti", this::seti);
-        operators.put("gtir", this::gtir);
-        operators.put("gtri", this::gtri);
-        operators.put("gtrr", this::gtrr);
-        operators.put("eqir", this::eqir);
-        operators.put("eqri", this::eqri);
-        operators.put("eqrr", this::eqrr);
     }
 
     public void setRegister(int[] r) {
@@ -85,182 +101,576 @@ class Device {
         Arrays.fill(register, 0);
     }
 
-    public int[] addr(int a, int b, int c) {
-        register[c] = register[a] + register[b];
-        return register;
+    public void executeProgram(Program inputProgram) {
+        execute(inputProgram, 0);
     }
 
-    public int[] addi(int a, int b, int c) {
-        register[c] = register[a] + b;
-        return register;
+    /**
+     * Continues a program from the last snapshot in the given file.
+     */
+    public void resumeFromSnapshot(Program inputProgram, Path file) throws IOException {
+        Snapshot snapshot;
+        try (SnapshotFile snapshots = SnapshotFile.read(file, register.length, registerAsInstructionPointer)) {
+            snapshot = snapshots.last()
+                    .orElseThrow(() -> new IllegalStateException("no snapshot in " + file));
+        }
+        setRegister(snapshot.getRegister());
+        execute(inputProgram, snapshot.getCounter());
     }
 
-    public int[] mulr(int a, int b, int c) {
-        register[c] = register[a] * register[b];
-        return register;
+    /**
+     * Re-executes a program from the nearest snapshot at or before the given instruction count.
+     * No new snapshots are written.
+     *
+     * @return the registers after the given number of instructions
+     */
+    public int[] replay(Program inputProgram, Path file, long instructionCount) throws IOException {
+        Snapshot snapshot;
+        try (SnapshotFile snapshots = SnapshotFile.read(file, register.length, registerAsInstructionPointer)) {
+            snapshot = snapshots.nearest(instructionCount)
+                    .orElseThrow(() -> new IllegalStateException(String.format("no snapshot at or before instruction %d in %s", instructionCount, file)));
+        }
+        setRegister(snapshot.getRegister());
+        long originalMaxInstructionsToExecute = maxInstructionsToExecute;
+        Path originalSnapshotFile = snapshotFile;
+        try {
+            maxInstructionsToExecute = instructionCount;
+            snapshotFile = null;
+            execute(inputProgram, snapshot.getCounter());
+        } finally {
+            maxInstructionsToExecute = originalMaxInstructionsToExecute;
+            snapshotFile = originalSnapshotFile;
+        }
+        return register.clone();
     }
 
-    public int[] muli(int a, int b, int c) {
-        register[c] = register[a] * b;
-        return register;
+    private void execute(Program inputProgram, long startCounter) {
+        // compile the statements into a flat int[] so the hot loop does no map lookups
+        CompiledProgram program = CompiledProgram.compile(inputProgram, registerAsInstructionPointer);
+        // the profile needs every single instruction: no accelerated loops or superinstructions
+        AcceleratedLoop[] acceleratedLoops = profiling ? new AcceleratedLoop[program.size()] : findAcceleratedLoops(program);
+        // the watched instructions and loop heads need the attention of this method
+        program = program.withBreakpoints(IntStream.concat(
+                watchpoints.stream().mapToInt(Watchpoint::getInstructionNr),
+                Arrays.stream(acceleratedLoops).filter(Objects::nonNull).mapToInt(AcceleratedLoop::getHead))
+                .toArray());
+        if (fuseInstructions && !profiling) {
+            program = program.fuse();
+        }
+        Optional<JitProgram> jit = jitEnabled && !profiling ? jitCompile(program) : Optional.empty();
+        ExecutionProfile executionProfile = profiling ? new ExecutionProfile(program) : null;
+        if (profiling) {
+            profile = executionProfile;
+        }
+
+        long counter = startCounter;
+        SnapshotFile snapshots = null;
+        try {
+            long nextSnapshot = Long.MAX_VALUE;
+            if (snapshotFile != null && snapshotInterval > 0) {
+                // a resumed run appends to the existing snapshots
+                snapshots = SnapshotFile.write(snapshotFile, register.length, registerAsInstructionPointer, startCounter > 0);
+                if (startCounter == 0) {
+                    snapshots.append(counter, register);
+                }
+                nextSnapshot = counter - counter % snapshotInterval + snapshotInterval;
+            }
+
+            while (counter < maxInstructionsToExecute) {
+                // verify instruction pointer pointing to valid program instruction
+                int instructionPointer = register[registerAsInstructionPointer];
+                if (!program.isValidInstructionPointer(instructionPointer)) {
+                    throw new IllegalStateException(String.format("instruction pointer %d outside program (line 0..%d), executed #instructions: %d  ", instructionPointer, program.size() - 1, counter));
+                }
+
+                AcceleratedLoop loop = acceleratedLoops[instructionPointer];
+                long loopInstructions = loop == null || printDebugging ? -1 : loop.execute(register, maxInstructionsToExecute - counter);
+                if (loopInstructions >= 0) {
+                    counter += loopInstructions;
+                } else if (printDebugging || program.isBreakpoint(instructionPointer)) {
+                    // execute a single instruction so we can log/check after it
+                    preDebugLog(program, instructionPointer);
+                    program.step(register, instructionPointer);
+                    postDebugLog();
+                    if (executionProfile != null) {
+                        executionProfile.hit(instructionPointer, register[registerAsInstructionPointer] != instructionPointer);
+                    }
+
+                    if (notifyWatchpoints(instructionPointer)) {
+                        return;
+                    }
+                    register[registerAsInstructionPointer]++;
+                    counter++;
+                    progressLog(counter);
+                } else {
+                    // run the tight loop until the next progress mark or snapshot, a breakpoint or the end of the program
+                    long limit = Math.min(Math.min(maxInstructionsToExecute, nextSnapshot), counter - counter % PROGRESS_INTERVAL + PROGRESS_INTERVAL);
+                    long newCounter;
+                    if (executionProfile != null) {
+                        newCounter = program.runProfiled(register, counter, limit, executionProfile.getHits(), executionProfile.getTaken());
+                    } else if (jit.isPresent()) {
+                        newCounter = jit.get().run(register, counter, limit);
+                        if (newCounter < limit && program.isValidInstructionPointer(register[registerAsInstructionPointer])
+                                && !program.isBreakpoint(register[registerAsInstructionPointer])) {
+                            // the generated code bailed out (unknown jump target or block too long for the limit): interpret 1 instruction
+                            newCounter = program.run(register, newCounter, newCounter + 1);
+                        }
+                    } else {
+                        newCounter = program.run(register, counter, limit);
+                    }
+                    if (newCounter != counter) {
+                        progressLog(newCounter);
+                    }
+                    counter = newCounter;
+                }
+
+                if (counter >= nextSnapshot) {
+                    snapshots.append(counter, register);
+                    nextSnapshot = counter - counter % snapshotInterval + snapshotInterval;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("writing snapshot failed", e);
+        } finally {
+            instructionsExecuted = counter;
+            closeQuietly(snapshots);
+            if (executionProfile != null) {
+                executionProfile.commitEvent();
+            }
+        }
     }
 
-    public int[] banr(int a, int b, int c) {
-        register[c] = register[a] & register[b];
-        return register;
+    private static void closeQuietly(SnapshotFile snapshots) {
+        if (snapshots != null) {
+            try {
+                snapshots.close();
+            } catch (IOException e) {
+                System.out.println("closing snapshot file failed: " + e.getMessage());
+            }
+        }
     }
 
-    public int[] bani(int a, int b, int c) {
-        register[c] = register[a] & b;
-        return register;
+    /**
+     * @return per instruction the loop entered there, if any
+     */
+    private AcceleratedLoop[] findAcceleratedLoops(CompiledProgram program) {
+        AcceleratedLoop[] loops = new AcceleratedLoop[program.size()];
+        if (accelerateLoops) {
+            for (AcceleratedLoop loop : LoopAccelerator.findLoops(program)) {
+                // watchpoints must see every execution of their instruction
+                if (watchpoints.stream().noneMatch(w -> loop.contains(w.getInstructionNr()))) {
+                    loops[loop.getHead()] = loop;
+                }
+            }
+        }
+        return loops;
     }
 
-    public int[] borr(int a, int b, int c) {
-        register[c] = register[a] | register[b];
-        return register;
+    private Optional<JitProgram> jitCompile(CompiledProgram program) {
+        if (!program.equals(jitSource)) {
+            jitSource = program;
+            jitProgram = JitCompiler.compile(program, register.length);
+        }
+        return jitProgram;
     }
 
-    public int[] bori(int a, int b, int c) {
-        register[c] = register[a] | b;
-        return register;
+    /**
+     * Observe a register every time the given instruction has been executed.
+     */
+    public void addWatchpoint(int instructionNr, int registerNr, WatchpointListener listener) {
+        watchpoints.add(new Watchpoint(instructionNr, registerNr, listener));
     }
 
-    public int[] setr(int a, int b, int c) {
-        register[c] = register[a];
-        return register;
+    public void clearWatchpoints() {
+        watchpoints.clear();
     }
 
-    public int[] seti(int a, int b, int c) {
-        register[c] = a;
-        return register;
+    /**
+     * Analysis of a halting condition like "eqrr X 0 _": runs the program from the current registers and collects
+     * the values of register X at that instruction until they repeat. Register 0 values outside this sequence
+     * never halt the program. The loops computing the values are accelerated, so this takes milliseconds
+     * where the guest needs billions of instructions.
+     *
+     * @return the distinct values in order of appearance
+     */
+    public long[] haltingValues(Program program, int instructionNr, int registerNr) {
+        List<Watchpoint> originalWatchpoints = new ArrayList<>(watchpoints);
+        RepeatDetector repeatDetector = new RepeatDetector();
+        try {
+            watchpoints.clear();
+            addWatchpoint(instructionNr, registerNr, repeatDetector);
+            executeProgram(program);
+        } finally {
+            watchpoints.clear();
+            watchpoints.addAll(originalWatchpoints);
+        }
+        return repeatDetector.getValues();
     }
 
-    public int[] gtir(int a, int b, int c) {
-        if (a > register[b]) {
-            register[c] = 1;
-        } else {
-            register[c] = 0;
+    /**
+     * @return true when a listener wants to stop the program
+     */
+    private boolean notifyWatchpoints(int instructionPointer) {
+        boolean stop = false;
+        for (Watchpoint watchpoint : watchpoints) {
+            if (watchpoint.getInstructionNr() == instructionPointer) {
+                stop |= watchpoint.getListener().onHit(register[watchpoint.getRegisterNr()]);
+            }
         }
-        return register;
+        return stop;
     }
 
-    public int[] gtri(int a, int b, int c) {
-        if (register[a] > b) {
-            register[c] = 1;
-        } else {
-            register[c] = 0;
+    private void postDebugLog() {
+        if (printDebugging) {
+            System.out.println(" " + Arrays.toString(register));
         }
-        return register;
     }
 
-    public int[] gtrr(int a, int b, int c) {
-        if (register[a] > register[b]) {
-            register[c] = 1;
-        } else {
-            register[c] = 0;
+    private void preDebugLog(CompiledProgram program, int instructionPointer) {
+        if (printDebugging) {
+            System.out.print("ip=" + instructionPointer + " " + Arrays.toString(register) + " " + program.describe(instructionPointer));
         }
-        return register;
     }
 
-    public int[] eqir(int a, int b, int c) {
-        if (a == register[b]) {
-            register[c] = 1;
-        } else {
-            register[c] = 0;
+    private void progressLog(long counter) {
+        if (counter % PROGRESS_INTERVAL == 0) {
+            System.out.print(".");
         }
-        return register;
     }
 
-    public int[] eqri(int a, int b, int c) {
-        if (register[a] == b) {
-            register[c] = 1;
-        } else {
-            register[c] = 0;
+}
+
+/**
+ * Per instruction the number of executions and of taken jumps (writes changing the instruction pointer register).
+ */
+@Getter
+class ExecutionProfile {
+    private final CompiledProgram program;
+    private final long[] hits;
+    private final long[] taken;
+
+    ExecutionProfile(CompiledProgram program) {
+        this.program = program;
+        this.hits = new long[program.size()];
+        this.taken = new long[program.size()];
+    }
+
+    void hit(int instructionNr, boolean jumped) {
+        hits[instructionNr]++;
+        if (jumped) {
+            taken[instructionNr]++;
         }
-        return register;
     }
 
-    public int[] eqrr(int a, int b, int c) {
-        if (register[a] == register[b]) {
-            register[c] = 1;
+    public long getTotal() {
+        return Arrays.stream(hits).sum();
+    }
+
+    /**
+     * @return the instruction numbers, most executed first
+     */
+    public int[] hotSpots() {
+        return IntStream.range(0, hits.length)
+                .boxed()
+                .sorted(Comparator.comparingLong((Integer i) -> hits[i]).reversed())
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    public String report(int nrHotSpots) {
+        long total = getTotal();
+        StringBuilder sb = new StringBuilder(String.format("hot spots (#instructions: %d)%n", total));
+        sb.append(String.format("%4s  %-20s %15s %7s %7s%n", "ip", "instruction", "hits", "%", "taken%"));
+        Arrays.stream(hotSpots())
+                .limit(nrHotSpots)
+                .filter(i -> hits[i] > 0)
+                .forEach(i -> sb.append(String.format("%4d  %-20s %15d %6.2f%% %7s%n", i, program.describe(i), hits[i],
+                        100.0 * hits[i] / total,
+                        program.argument(i, 2) == program.getRegisterAsInstructionPointer() ? String.format("%6.2f%%", 100.0 * taken[i] / hits[i]) : "")));
+        return sb.toString();
+    }
+
+    /**
+     * Emits a JFR event with the summary, a no-op when no recording is active.
+     */
+    void commitEvent() {
+        DeviceProfileEvent event = new DeviceProfileEvent();
+        if (event.shouldCommit()) {
+            int hottest = hotSpots().length > 0 ? hotSpots()[0] : -1;
+            event.instructions = getTotal();
+            event.hottestInstruction = hottest;
+            event.hottestHits = hottest >= 0 ? hits[hottest] : 0;
+            event.report = report(10);
+            event.commit();
+        }
+    }
+}
+
+@Name("com.ing.DeviceProfile")
+@Label("Device Profile")
+@Category("Advent of Code")
+class DeviceProfileEvent extends Event {
+    @Label("Instructions")
+    long instructions;
+    @Label("Hottest Instruction")
+    int hottestInstruction;
+    @Label("Hottest Instruction Hits")
+    long hottestHits;
+    @Label("Report")
+    String report;
+}
+
+@AllArgsConstructor
+@Getter
+class Snapshot {
+    private final long counter;
+    private final int[] register;
+}
+
+/**
+ * Binary file of snapshots: a header (magic, #registers, instruction pointer register) followed by fixed size
+ * records (instruction counter, registers) in increasing counter order.
+ */
+class SnapshotFile implements Closeable {
+    private static final int MAGIC = 0x44455631;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+    private final RandomAccessFile file;
+    private final int nrRegisters;
+    private final int recordSize;
+
+    private SnapshotFile(RandomAccessFile file, int nrRegisters) {
+        this.file = file;
+        this.nrRegisters = nrRegisters;
+        this.recordSize = Long.BYTES + nrRegisters * Integer.BYTES;
+    }
+
+    public static SnapshotFile read(Path path, int nrRegisters, int registerAsInstructionPointer) throws IOException {
+        SnapshotFile snapshots = new SnapshotFile(new RandomAccessFile(path.toFile(), "r"), nrRegisters);
+        snapshots.verifyHeader(registerAsInstructionPointer);
+        return snapshots;
+    }
+
+    /**
+     * @param append continue an existing file instead of starting a new one
+     */
+    public static SnapshotFile write(Path path, int nrRegisters, int registerAsInstructionPointer, boolean append) throws IOException {
+        SnapshotFile snapshots = new SnapshotFile(new RandomAccessFile(path.toFile(), "rw"), nrRegisters);
+        if (append && snapshots.file.length() > 0) {
+            snapshots.verifyHeader(registerAsInstructionPointer);
+            // drop a partially written record
+            snapshots.file.setLength(HEADER_SIZE + (long) snapshots.size() * snapshots.recordSize);
+            snapshots.file.seek(snapshots.file.length());
         } else {
-            register[c] = 0;
+            snapshots.file.setLength(0);
+            snapshots.file.writeInt(MAGIC);
+            snapshots.file.writeInt(nrRegisters);
+            snapshots.file.writeInt(registerAsInstructionPointer);
         }
-        return register;
+        return snapshots;
     }
 
-    public void executeProgram(Program inputProgram) {
-        Statement statement;
-        // clone statements to use
-        List<Statement> listStatements = inputProgram.getStatements();
-        List<Long> day21Part2Candidates = new ArrayList<>();
+    private void verifyHeader(int registerAsInstructionPointer) throws IOException {
+        file.seek(0);
+        if (file.length() < HEADER_SIZE || file.readInt() != MAGIC) {
+            throw new IllegalStateException("not a snapshot file");
+        }
+        int fileNrRegisters = file.readInt();
+        int fileRegisterAsInstructionPointer = file.readInt();
+        if (fileNrRegisters != nrRegisters || fileRegisterAsInstructionPointer != registerAsInstructionPointer) {
+            throw new IllegalStateException(String.format("snapshot file is for %d registers with #ip %d", fileNrRegisters, fileRegisterAsInstructionPointer));
+        }
+    }
 
-        long counter = 0;
-        while (counter < maxInstructionsToExecute) {
-            // verify instruction pointer pointing to valid program instruction
-            if (validInstructionPointer(register[registerAsInstructionPointer], listStatements)) {
-                statement = listStatements.get(register[registerAsInstructionPointer]);
-                preDebugLog(statement);
-                OpCode operation = operators.get(statement.getOperation());
-                operation.apply(statement.getArguments()[0], statement.getArguments()[1], statement.getArguments()[2]);
-                postDebugLog();
+    public void append(long counter, int[] register) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putLong(counter);
+        for (int i = 0; i < nrRegisters; i++) {
+            record.putInt(register[i]);
+        }
+        file.write(record.array());
+    }
+
+    public int size() throws IOException {
+        return (int) ((file.length() - HEADER_SIZE) / recordSize);
+    }
+
+    public Snapshot get(int index) throws IOException {
+        byte[] bytes = new byte[recordSize];
+        file.seek(HEADER_SIZE + (long) index * recordSize);
+        file.readFully(bytes);
+        ByteBuffer record = ByteBuffer.wrap(bytes);
+        long counter = record.getLong();
+        int[] register = new int[nrRegisters];
+        for (int i = 0; i < nrRegisters; i++) {
+            register[i] = record.getInt();
+        }
+        return new Snapshot(counter, register);
+    }
+
+    public Optional<Snapshot> last() throws IOException {
+        int size = size();
+        return size == 0 ? Optional.empty() : Optional.of(get(size - 1));
+    }
+
+    /**
+     * @return the last snapshot with a counter at or before the given counter (binary search)
+     */
+    public Optional<Snapshot> nearest(long counter) throws IOException {
+        int low = 0;
+        int high = size() - 1;
+        Snapshot result = null;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Snapshot snapshot = get(middle);
+            if (snapshot.getCounter() <= counter) {
+                result = snapshot;
+                low = middle + 1;
             } else {
-                throw new IllegalStateException(String.format("instruction pointer %d outside program (line 0..%d), executed #instructions: %d  ", register[registerAsInstructionPointer], inputProgram.getStatements().size() - 1, counter));
-            }
-
-            // day 21 stuff
-            if (checkDay21Condition) {
-                if (day21Condition()) {
-                    day21Part1Output = register[registerWhichGetsComparedWithRegister0];
-                    if (day21PartTwo) {
-                        if (day21Part2Candidates.contains(day21Part1Output)) {
-                            System.out.println("#day21Part2Candidates = " + day21Part2Candidates.size());
-                            day21Part2Output = day21Part2Candidates.get(day21Part2Candidates.size() - 1);
-                            return;
-                        } else {
-                            day21Part2Candidates.add(day21Part1Output);
-                        }
-                    } else {
-                        return;
-                    }
-                }
+                high = middle - 1;
             }
-            register[registerAsInstructionPointer]++;
-            counter++;
-            progressLog(counter);
         }
+        return Optional.ofNullable(result);
     }
 
-    private boolean day21Condition() {
-        if (register[registerAsInstructionPointer] == day21InstructionNr) {
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
+
+@FunctionalInterface
+interface WatchpointListener {
+    /**
+     * Called with the value of the watched register after the watched instruction has been executed.
+     *
+     * @return true to stop the program (before the instruction pointer is incremented)
+     */
+    boolean onHit(int value);
+}
+
+@AllArgsConstructor
+@Getter
+class Watchpoint {
+    private final int instructionNr;
+    private final int registerNr;
+    private final WatchpointListener listener;
+}
+
+/**
+ * Stops the program as soon as the watched register repeats a value.
+ */
+class RepeatDetector implements WatchpointListener {
+    private final LongOpenHashSet seen = new LongOpenHashSet();
+    // the distinct values in order of appearance
+    private long[] values = new long[16];
+
+    @Override
+    public boolean onHit(int value) {
+        if (!seen.add(value)) {
             return true;
         }
+        if (seen.size() > values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[seen.size() - 1] = value;
         return false;
     }
 
-    private void postDebugLog() {
-        if (printDebugging) {
-            System.out.println(" " + Arrays.toString(register));
-        }
+    public int getNrDistinctValues() {
+        return seen.size();
     }
 
-    private void preDebugLog(Statement statement) {
-        if (printDebugging) {
-            System.out.print("ip=" + register[registerAsInstructionPointer] + " " + Arrays.toString(register) + " " + statement.getOperation() + " " + Arrays.toString(statement.getArguments()));
+    public long[] getValues() {
+        return Arrays.copyOf(values, seen.size());
+    }
+}
+
+/**
+ * Set of primitive longs with open addressing (linear probing), no boxing and O(1) add/contains.
+ */
+class LongOpenHashSet {
+    private static final long FREE = 0;
+
+    private long[] keys = new long[16];
+    // FREE marks an empty slot, so the value itself is kept aside
+    private boolean containsFree = false;
+    private int size = 0;
+
+    public boolean contains(long value) {
+        if (value == FREE) {
+            return containsFree;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(value) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == value) {
+                return true;
+            }
         }
+        return false;
     }
 
-    private void progressLog(long counter) {
-        if (counter % (1000 * 1000 * 100) == 0) {
-            System.out.print(".");
+    /**
+     * @return false when the value was already present
+     */
+    public boolean add(long value) {
+        if (value == FREE) {
+            if (containsFree) {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
         }
+        int mask = keys.length - 1;
+        int slot = hash(value) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = value;
+        size++;
+        // keep the load factor at most 1/2
+        if (2 * size > keys.length) {
+            rehash();
+        }
+        return true;
     }
 
-    private boolean validInstructionPointer(int instructionPointer, List<Statement> listStatements) {
-        if (instructionPointer < 0) {
-            return false;
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void rehash() {
+        long[] old = keys;
+        keys = new long[old.length * 2];
+        int mask = keys.length - 1;
+        for (long key : old) {
+            if (key != FREE) {
+                int slot = hash(key) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
         }
-        return instructionPointer < listStatements.size();
+    }
+
+    // murmur3 finalizer, spreads consecutive values over the table
+    private static int hash(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
     }
 }
 
@@ -282,9 +692,961 @@ class Program {
     List<Statement> statements = new ArrayList<>();
 }
 
+/**
+ * A {@link Program} decoded into a flat int[]: per instruction the opcode ordinal followed by the 3 arguments.
+ * Instances are immutable so they can be shared between devices.
+ */
+class CompiledProgram {
+    static final int ADDR = 0;
+    static final int ADDI = 1;
+    static final int MULR = 2;
+    static final int MULI = 3;
+    static final int BANR = 4;
+    static final int BANI = 5;
+    static final int BORR = 6;
+    static final int BORI = 7;
+    static final int SETR = 8;
+    static final int SETI = 9;
+    static final int GTIR = 10;
+    static final int GTRI = 11;
+    static final int GTRR = 12;
+    static final int EQIR = 13;
+    static final int EQRI = 14;
+    static final int EQRR = 15;
+
+    // superinstructions, fused with the following instructions by fuse(): per compare operation (GTIR..EQRR)
+    // "compare; addr T IP IP" (skip the next instruction when true) and
+    // "compare; addr T IP IP; seti X _ IP" (branch to X + 1 when false)
+    static final int SKIP_BASE = 16;
+    static final int BRANCH_BASE = 22;
+    static final int GTIR_SKIP = SKIP_BASE;
+    static final int GTRI_SKIP = SKIP_BASE + 1;
+    static final int GTRR_SKIP = SKIP_BASE + 2;
+    static final int EQIR_SKIP = SKIP_BASE + 3;
+    static final int EQRI_SKIP = SKIP_BASE + 4;
+    static final int EQRR_SKIP = SKIP_BASE + 5;
+    static final int GTIR_BRANCH = BRANCH_BASE;
+    static final int GTRI_BRANCH = BRANCH_BASE + 1;
+    static final int GTRR_BRANCH = BRANCH_BASE + 2;
+    static final int EQIR_BRANCH = BRANCH_BASE + 3;
+    static final int EQRI_BRANCH = BRANCH_BASE + 4;
+    static final int EQRR_BRANCH = BRANCH_BASE + 5;
+
+    static final String[] MNEMONICS = {"addr", "addi", "mulr", "muli", "banr", "bani", "borr", "bori",
+            "setr", "seti", "gtir", "gtri", "gtrr", "eqir", "eqri", "eqrr"};
+
+    // flag on the opcode which makes run() return to the caller before executing the instruction
+    private static final int BREAKPOINT = 0x100;
+    private static final int OPCODE_MASK = 0xFF;
+    private static final int STRIDE = 4;
+
+    private final int[] code;
+    private final int size;
+    @Getter
+    private final int registerAsInstructionPointer;
+
+    private CompiledProgram(int[] code, int registerAsInstructionPointer) {
+        this.code = code;
+        this.size = code.length / STRIDE;
+        this.registerAsInstructionPointer = registerAsInstructionPointer;
+    }
+
+    public static CompiledProgram compile(Program program, int registerAsInstructionPointer) {
+        List<Statement> statements = program.getStatements();
+        int[] code = new int[statements.size() * STRIDE];
+        for (int i = 0; i < statements.size(); i++) {
+            Statement statement = statements.get(i);
+            int opcode = Arrays.asList(MNEMONICS).indexOf(statement.getOperation());
+            if (opcode < 0) {
+                throw new IllegalArgumentException(String.format("unknown operation '%s' at line %d", statement.getOperation(), i));
+            }
+            code[i * STRIDE] = opcode;
+            System.arraycopy(statement.getArguments(), 0, code, i * STRIDE + 1, STRIDE - 1);
+        }
+        return new CompiledProgram(code, registerAsInstructionPointer);
+    }
+
+    /**
+     * @return a copy of this program which stops run() in front of the given instructions
+     */
+    public CompiledProgram withBreakpoints(int... instructionNrs) {
+        int[] copy = code.clone();
+        for (int instructionNr : instructionNrs) {
+            if (instructionNr >= 0 && instructionNr < size) {
+                copy[instructionNr * STRIDE] |= BREAKPOINT;
+            }
+        }
+        return new CompiledProgram(copy, registerAsInstructionPointer);
+    }
+
+    /**
+     * Peephole pass which replaces compare-and-skip pairs and compare-and-branch triples by a superinstruction.
+     * The fused instructions stay in place, so jumps into the middle of a pattern still work.
+     * Apply it after adding breakpoints: patterns containing a breakpoint are not fused.
+     */
+    public CompiledProgram fuse() {
+        int[] fused = code.clone();
+        for (int i = 0; i + 1 < size; i++) {
+            // raw opcode: a breakpoint flag makes it fall outside the compare range
+            int op = code[i * STRIDE];
+            int t = argument(i, 2);
+            if (op < GTIR || op > EQRR || t == registerAsInstructionPointer || !isSkip(i + 1, t)) {
+                continue;
+            }
+            boolean branch = i + 2 < size && code[(i + 2) * STRIDE] == SETI && argument(i + 2, 2) == registerAsInstructionPointer;
+            fused[i * STRIDE] = (branch ? BRANCH_BASE : SKIP_BASE) + op - GTIR;
+        }
+        return new CompiledProgram(fused, registerAsInstructionPointer);
+    }
+
+    // addr T IP IP (or addr IP T IP) without breakpoint
+    private boolean isSkip(int instructionNr, int t) {
+        int ip = registerAsInstructionPointer;
+        return code[instructionNr * STRIDE] == ADDR && argument(instructionNr, 2) == ip
+                && ((argument(instructionNr, 0) == t && argument(instructionNr, 1) == ip)
+                || (argument(instructionNr, 0) == ip && argument(instructionNr, 1) == t));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isValidInstructionPointer(int instructionPointer) {
+        return instructionPointer >= 0 && instructionPointer < size;
+    }
+
+    public boolean isBreakpoint(int instructionPointer) {
+        return (code[instructionPointer * STRIDE] & BREAKPOINT) != 0;
+    }
+
+    /**
+     * @return the original opcode, also for superinstructions
+     */
+    public int opcode(int instructionNr) {
+        int op = code[instructionNr * STRIDE] & OPCODE_MASK;
+        if (op >= BRANCH_BASE) {
+            return op - BRANCH_BASE + GTIR;
+        }
+        if (op >= SKIP_BASE) {
+            return op - SKIP_BASE + GTIR;
+        }
+        return op;
+    }
+
+    public int argument(int instructionNr, int argumentNr) {
+        return code[instructionNr * STRIDE + 1 + argumentNr];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CompiledProgram)) {
+            return false;
+        }
+        CompiledProgram other = (CompiledProgram) o;
+        return registerAsInstructionPointer == other.registerAsInstructionPointer && Arrays.equals(code, other.code);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(code) + registerAsInstructionPointer;
+    }
+
+    public String describe(int instructionNr) {
+        return MNEMONICS[opcode(instructionNr)] + " " + Arrays.toString(Arrays.copyOfRange(code, instructionNr * STRIDE + 1, instructionNr * STRIDE + STRIDE));
+    }
+
+    /**
+     * Executes instructions until the counter reaches the limit, the instruction pointer leaves the program
+     * or a breakpoint is hit. Does not allocate and touches only the given register.
+     *
+     * @return the updated instruction counter
+     */
+    public long run(int[] r, long counter, long limit) {
+        final int[] code = this.code;
+        final int ipRegister = registerAsInstructionPointer;
+        final int size = this.size;
+        while (counter < limit) {
+            int ip = r[ipRegister];
+            if (ip < 0 || ip >= size) {
+                return counter;
+            }
+            int pc = ip * STRIDE;
+            int a = code[pc + 1];
+            int b = code[pc + 2];
+            int c = code[pc + 3];
+            switch (code[pc]) {
+                case ADDR: r[c] = r[a] + r[b]; break;
+                case ADDI: r[c] = r[a] + b; break;
+                case MULR: r[c] = r[a] * r[b]; break;
+                case MULI: r[c] = r[a] * b; break;
+                case BANR: r[c] = r[a] & r[b]; break;
+                case BANI: r[c] = r[a] & b; break;
+                case BORR: r[c] = r[a] | r[b]; break;
+                case BORI: r[c] = r[a] | b; break;
+                case SETR: r[c] = r[a]; break;
+                case SETI: r[c] = a; break;
+                case GTIR: r[c] = a > r[b] ? 1 : 0; break;
+                case GTRI: r[c] = r[a] > b ? 1 : 0; break;
+                case GTRR: r[c] = r[a] > r[b] ? 1 : 0; break;
+                case EQIR: r[c] = a == r[b] ? 1 : 0; break;
+                case EQRI: r[c] = r[a] == b ? 1 : 0; break;
+                case EQRR: r[c] = r[a] == r[b] ? 1 : 0; break;
+                case GTIR_SKIP: counter = skip(r, ip, c, a > r[b] ? 1 : 0, counter, limit); break;
+                case GTRI_SKIP: counter = skip(r, ip, c, r[a] > b ? 1 : 0, counter, limit); break;
+                case GTRR_SKIP: counter = skip(r, ip, c, r[a] > r[b] ? 1 : 0, counter, limit); break;
+                case EQIR_SKIP: counter = skip(r, ip, c, a == r[b] ? 1 : 0, counter, limit); break;
+                case EQRI_SKIP: counter = skip(r, ip, c, r[a] == b ? 1 : 0, counter, limit); break;
+                case EQRR_SKIP: counter = skip(r, ip, c, r[a] == r[b] ? 1 : 0, counter, limit); break;
+                case GTIR_BRANCH: counter = branch(r, ip, c, a > r[b] ? 1 : 0, counter, limit); break;
+                case GTRI_BRANCH: counter = branch(r, ip, c, r[a] > b ? 1 : 0, counter, limit); break;
+                case GTRR_BRANCH: counter = branch(r, ip, c, r[a] > r[b] ? 1 : 0, counter, limit); break;
+                case EQIR_BRANCH: counter = branch(r, ip, c, a == r[b] ? 1 : 0, counter, limit); break;
+                case EQRI_BRANCH: counter = branch(r, ip, c, r[a] == b ? 1 : 0, counter, limit); break;
+                case EQRR_BRANCH: counter = branch(r, ip, c, r[a] == r[b] ? 1 : 0, counter, limit); break;
+                default:
+                    // breakpoint: leave it to the caller
+                    return counter;
+            }
+            r[ipRegister]++;
+            counter++;
+        }
+        return counter;
+    }
+
+    /**
+     * Like run(), but one instruction at a time counting per instruction the hits and the jumps taken
+     * (the instruction pointer register changed). Superinstructions are executed as their first instruction.
+     */
+    public long runProfiled(int[] r, long counter, long limit, long[] hits, long[] taken) {
+        final int ipRegister = registerAsInstructionPointer;
+        while (counter < limit) {
+            int ip = r[ipRegister];
+            if (ip < 0 || ip >= size || isBreakpoint(ip)) {
+                return counter;
+            }
+            step(r, ip);
+            hits[ip]++;
+            if (r[ipRegister] != ip) {
+                taken[ip]++;
+            }
+            r[ipRegister]++;
+            counter++;
+        }
+        return counter;
+    }
+
+    /**
+     * Compare (writing t to register c) and skip the next instruction when t is 1. Like all instructions
+     * the caller increments the instruction pointer and the counter once more.
+     * Without room for both instructions in the limit only the compare is executed.
+     *
+     * @return the counter
+     */
+    private long skip(int[] r, int ip, int c, int t, long counter, long limit) {
+        r[c] = t;
+        if (limit - counter < 2) {
+            return counter;
+        }
+        r[registerAsInstructionPointer] = ip + 1 + t;
+        return counter + 1;
+    }
+
+    /**
+     * Compare (writing t to register c), skip the jump when t is 1, otherwise execute the jump.
+     */
+    private long branch(int[] r, int ip, int c, int t, long counter, long limit) {
+        r[c] = t;
+        if (limit - counter < 3) {
+            return counter;
+        }
+        if (t != 0) {
+            r[registerAsInstructionPointer] = ip + 2;
+            return counter + 1;
+        }
+        // the value of the seti
+        r[registerAsInstructionPointer] = code[(ip + 2) * STRIDE + 1];
+        return counter + 2;
+    }
+
+    /**
+     * Executes the single instruction at the given instruction pointer (ignoring breakpoints) without
+     * incrementing the instruction pointer.
+     */
+    public void step(int[] r, int instructionNr) {
+        int pc = instructionNr * STRIDE;
+        r[code[pc + 3]] = evaluate(opcode(instructionNr), code[pc + 1], code[pc + 2], r);
+    }
+
+    /**
+     * Side-effect free evaluation of an operation.
+     *
+     * @return the value the operation would write to register C
+     */
+    static int evaluate(int opcode, int a, int b, int[] r) {
+        switch (opcode) {
+            case ADDR: return r[a] + r[b];
+            case ADDI: return r[a] + b;
+            case MULR: return r[a] * r[b];
+            case MULI: return r[a] * b;
+            case BANR: return r[a] & r[b];
+            case BANI: return r[a] & b;
+            case BORR: return r[a] | r[b];
+            case BORI: return r[a] | b;
+            case SETR: return r[a];
+            case SETI: return a;
+            case GTIR: return a > r[b] ? 1 : 0;
+            case GTRI: return r[a] > b ? 1 : 0;
+            case GTRR: return r[a] > r[b] ? 1 : 0;
+            case EQIR: return a == r[b] ? 1 : 0;
+            case EQRI: return r[a] == b ? 1 : 0;
+            case EQRR: return r[a] == r[b] ? 1 : 0;
+            default:
+                throw new IllegalArgumentException("unknown opcode: " + opcode);
+        }
+    }
+}
+
+/**
+ * A guest loop which can be replaced by an equivalent native computation.
+ */
+interface AcceleratedLoop {
+    /**
+     * @return the instruction at which the loop is entered
+     */
+    int getHead();
+
+    /**
+     * @return true when the loop (possibly) executes the given instruction
+     */
+    boolean contains(int instructionNr);
+
+    /**
+     * Executes the complete loop natively when that is provably equivalent for the current register values,
+     * leaving the registers (including the instruction pointer) as the guest code would.
+     *
+     * @return the number of guest instructions the loop would have executed, or -1 (registers untouched)
+     * when the loop cannot be accelerated within the budget
+     */
+    long execute(int[] r, long budget);
+}
+
+/**
+ * Finds loops which can be accelerated: the targets of backward jumps are matched against the known idioms.
+ */
+class LoopAccelerator {
+    public static List<AcceleratedLoop> findLoops(CompiledProgram program) {
+        List<AcceleratedLoop> loops = new ArrayList<>();
+        int ipRegister = program.getRegisterAsInstructionPointer();
+        Set<Integer> backEdgeTargets = new TreeSet<>();
+        for (int i = 0; i < program.size(); i++) {
+            if (program.argument(i, 2) == ipRegister) {
+                OptionalInt target = JitCompiler.constantResult(program, i);
+                if (target.isPresent() && target.getAsInt() + 1 <= i && target.getAsInt() + 1 >= 0) {
+                    backEdgeTargets.add(target.getAsInt() + 1);
+                }
+            }
+        }
+        for (int head : backEdgeTargets) {
+            DivisorSumLoop.match(program, head).ifPresent(loops::add);
+            DivisionLoop.match(program, head).ifPresent(loops::add);
+        }
+        return loops;
+    }
+
+    static boolean is(CompiledProgram program, int instructionNr, int opcode, int a, int b, int c) {
+        return instructionNr < program.size()
+                && program.opcode(instructionNr) == opcode
+                && program.argument(instructionNr, 0) == a
+                && program.argument(instructionNr, 1) == b
+                && program.argument(instructionNr, 2) == c;
+    }
+
+    // for commutative operations
+    static boolean isEither(CompiledProgram program, int instructionNr, int opcode, int a, int b, int c) {
+        return is(program, instructionNr, opcode, a, b, c) || is(program, instructionNr, opcode, b, a, c);
+    }
+
+    static boolean distinct(int... registers) {
+        return Arrays.stream(registers).distinct().count() == registers.length;
+    }
+}
+
+/**
+ * The nested counting loop which adds every b in [b..n] which divides n to an accumulator (Day 19):
+ * <pre>
+ * head+0  seti 1 _ C
+ * head+1  mulr B C T
+ * head+2  eqrr T N T
+ * head+3  addr T IP IP
+ * head+4  addi IP 1 IP
+ * head+5  addr B A A
+ * head+6  addi C 1 C
+ * head+7  gtrr C N T
+ * head+8  addr IP T IP
+ * head+9  seti head _ IP
+ * head+10 addi B 1 B
+ * head+11 gtrr B N T
+ * head+12 addr T IP IP
+ * head+13 seti head-1 _ IP
+ * </pre>
+ * The guest multiplies in 32 bits, so "b divides n" really is "b * c == n (mod 2^32) for some c in [1..n]",
+ * which is what gets counted.
+ */
+class DivisorSumLoop implements AcceleratedLoop {
+    private static final int LENGTH = 14;
+
+    @Getter
+    private final int head;
+    private final int ipRegister;
+    private final int a;
+    private final int b;
+    private final int c;
+    private final int t;
+    private final int n;
+
+    private DivisorSumLoop(int head, int ipRegister, int a, int b, int c, int t, int n) {
+        this.head = head;
+        this.ipRegister = ipRegister;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.t = t;
+        this.n = n;
+    }
+
+    static Optional<DivisorSumLoop> match(CompiledProgram program, int head) {
+        if (head + LENGTH > program.size() || program.opcode(head) != CompiledProgram.SETI || program.opcode(head + 2) != CompiledProgram.EQRR) {
+            return Optional.empty();
+        }
+        int ip = program.getRegisterAsInstructionPointer();
+        int c = program.argument(head, 2);
+        int t = program.argument(head + 2, 2);
+        int n = program.argument(head + 2, 0) == t ? program.argument(head + 2, 1) : program.argument(head + 2, 0);
+        int b = program.argument(head + 1, 0) == c ? program.argument(head + 1, 1) : program.argument(head + 1, 0);
+        int a = program.argument(head + 5, 2);
+        if (!LoopAccelerator.distinct(ip, a, b, c, t, n)) {
+            return Optional.empty();
+        }
+        boolean matches = program.argument(head, 0) == 1
+                && LoopAccelerator.isEither(program, head + 1, CompiledProgram.MULR, b, c, t)
+                && LoopAccelerator.isEither(program, head + 2, CompiledProgram.EQRR, t, n, t)
+                && LoopAccelerator.isEither(program, head + 3, CompiledProgram.ADDR, t, ip, ip)
+                && LoopAccelerator.is(program, head + 4, CompiledProgram.ADDI, ip, 1, ip)
+                && LoopAccelerator.isEither(program, head + 5, CompiledProgram.ADDR, b, a, a)
+                && LoopAccelerator.is(program, head + 6, CompiledProgram.ADDI, c, 1, c)
+                && LoopAccelerator.is(program, head + 7, CompiledProgram.GTRR, c, n, t)
+                && LoopAccelerator.isEither(program, head + 8, CompiledProgram.ADDR, ip, t, ip)
+                && program.opcode(head + 9) == CompiledProgram.SETI && program.argument(head + 9, 0) == head && program.argument(head + 9, 2) == ip
+                && LoopAccelerator.is(program, head + 10, CompiledProgram.ADDI, b, 1, b)
+                && LoopAccelerator.is(program, head + 11, CompiledProgram.GTRR, b, n, t)
+                && LoopAccelerator.isEither(program, head + 12, CompiledProgram.ADDR, t, ip, ip)
+                && program.opcode(head + 13) == CompiledProgram.SETI && program.argument(head + 13, 0) == head - 1 && program.argument(head + 13, 2) == ip;
+        return matches ? Optional.of(new DivisorSumLoop(head, ip, a, b, c, t, n)) : Optional.empty();
+    }
+
+    @Override
+    public boolean contains(int instructionNr) {
+        return instructionNr >= head && instructionNr < head + LENGTH;
+    }
+
+    @Override
+    public long execute(int[] r, long budget) {
+        int number = r[n];
+        int first = r[b];
+        // counters must not wrap around, then the guest would (almost) never stop
+        if (number < 1 || number == Integer.MAX_VALUE || first < 1 || first == Integer.MAX_VALUE) {
+            return -1;
+        }
+        // the outer loop is a do-while: at least 1 pass, also when b > n
+        int last = Math.max(first, number);
+        long outerIterations = (long) last - first + 1;
+        // per pass: seti, the inner loop (8 per c, the last one skips the jump back), the 3 instructions testing b and the jump back
+        long instructions = outerIterations * (8L * number + 3) + outerIterations - 1;
+        if (instructions > budget) {
+            return -1;
+        }
+
+        int accumulator = r[a];
+        for (int divisor = first; divisor <= last; divisor++) {
+            accumulator += divisor * countSolutions(divisor, number);
+        }
+
+        r[a] = accumulator;
+        r[b] = last + 1;
+        r[c] = number + 1;
+        r[t] = 1;
+        r[ipRegister] = head + LENGTH;
+        return instructions;
+    }
+
+    /**
+     * @return the number of c in [1..n] for which divisor * c == n (mod 2^32)
+     */
+    static int countSolutions(int divisor, int n) {
+        int shift = Integer.numberOfTrailingZeros(divisor);
+        if (Integer.numberOfTrailingZeros(n) < shift) {
+            return 0;
+        }
+        // odd * c == n / 2^shift (mod 2^(32 - shift))
+        long period = 1L << (32 - shift);
+        long first = (Integer.toUnsignedLong(n >>> shift) * Integer.toUnsignedLong(inverse(divisor >>> shift))) & (period - 1);
+        if (first == 0) {
+            first = period;
+        }
+        return first > n ? 0 : (int) ((n - first) / period + 1);
+    }
+
+    // multiplicative inverse of an odd number modulo 2^32 (Newton iteration)
+    private static int inverse(int odd) {
+        int x = odd;
+        for (int i = 0; i < 4; i++) {
+            x *= 2 - odd * x;
+        }
+        return x;
+    }
+}
+
+/**
+ * The counting loop which divides x by a constant k (Day 21): the smallest q (starting at its current value)
+ * with (q + 1) * k > x.
+ * <pre>
+ * head+0  addi Q 1 T
+ * head+1  muli T K T
+ * head+2  gtrr T X T
+ * head+3  addr T IP IP
+ * head+4  addi IP 1 IP
+ * head+5  seti E _ IP
+ * head+6  addi Q 1 Q
+ * head+7  seti head-1 _ IP
+ * </pre>
+ */
+class DivisionLoop implements AcceleratedLoop {
+    private static final int LENGTH = 8;
+
+    @Getter
+    private final int head;
+    private final int ipRegister;
+    private final int q;
+    private final int t;
+    private final int x;
+    private final int k;
+    private final int exit;
+
+    private DivisionLoop(int head, int ipRegister, int q, int t, int x, int k, int exit) {
+        this.head = head;
+        this.ipRegister = ipRegister;
+        this.q = q;
+        this.t = t;
+        this.x = x;
+        this.k = k;
+        this.exit = exit;
+    }
+
+    static Optional<DivisionLoop> match(CompiledProgram program, int head) {
+        if (head + LENGTH > program.size() || program.opcode(head) != CompiledProgram.ADDI || program.opcode(head + 2) != CompiledProgram.GTRR) {
+            return Optional.empty();
+        }
+        int ip = program.getRegisterAsInstructionPointer();
+        int q = program.argument(head, 0);
+        int t = program.argument(head, 2);
+        int x = program.argument(head + 2, 1);
+        int k = program.argument(head + 1, 1);
+        if (!LoopAccelerator.distinct(ip, q, t, x) || k < 1) {
+            return Optional.empty();
+        }
+        boolean matches = LoopAccelerator.is(program, head, CompiledProgram.ADDI, q, 1, t)
+                && LoopAccelerator.is(program, head + 1, CompiledProgram.MULI, t, k, t)
+                && LoopAccelerator.is(program, head + 2, CompiledProgram.GTRR, t, x, t)
+                && LoopAccelerator.isEither(program, head + 3, CompiledProgram.ADDR, t, ip, ip)
+                && LoopAccelerator.is(program, head + 4, CompiledProgram.ADDI, ip, 1, ip)
+                && program.opcode(head + 5) == CompiledProgram.SETI && program.argument(head + 5, 2) == ip
+                && LoopAccelerator.is(program, head + 6, CompiledProgram.ADDI, q, 1, q)
+                && program.opcode(head + 7) == CompiledProgram.SETI && program.argument(head + 7, 0) == head - 1 && program.argument(head + 7, 2) == ip;
+        return matches ? Optional.of(new DivisionLoop(head, ip, q, t, x, k, program.argument(head + 5, 0))) : Optional.empty();
+    }
+
+    @Override
+    public boolean contains(int instructionNr) {
+        return instructionNr >= head && instructionNr < head + LENGTH;
+    }
+
+    @Override
+    public long execute(int[] r, long budget) {
+        int quotient = r[q];
+        int dividend = r[x];
+        if (quotient < 0 || dividend < 0) {
+            return -1;
+        }
+        long result = Math.max(quotient, dividend / k);
+        // (q + 1) * k grows with q: when the last product fits in 32 bits none of them wrapped
+        if ((result + 1) * k > Integer.MAX_VALUE) {
+            return -1;
+        }
+        // per q below the result 7 instructions, the exit takes 5
+        long instructions = 7 * (result - quotient) + 5;
+        if (instructions > budget) {
+            return -1;
+        }
+        r[q] = (int) result;
+        r[t] = 1;
+        r[ipRegister] = exit + 1;
+        return instructions;
+    }
+}
+
+/**
+ * Runs one program for many initial register vectors in parallel. The program is compiled once and shared:
+ * {@link CompiledProgram} and the accelerated loops are immutable, every run works on its own register vector.
+ */
+class DeviceBatchRunner {
+    public static final long NOT_HALTED = -1;
+
+    private final CompiledProgram program;
+    private final AcceleratedLoop[] acceleratedLoops;
+
+    public DeviceBatchRunner(Program inputProgram, int registerAsInstructionPointer) {
+        CompiledProgram compiled = CompiledProgram.compile(inputProgram, registerAsInstructionPointer);
+        acceleratedLoops = new AcceleratedLoop[compiled.size()];
+        for (AcceleratedLoop loop : LoopAccelerator.findLoops(compiled)) {
+            acceleratedLoops[loop.getHead()] = loop;
+        }
+        program = compiled.withBreakpoints(Arrays.stream(acceleratedLoops).filter(Objects::nonNull).mapToInt(AcceleratedLoop::getHead).toArray())
+                .fuse();
+    }
+
+    /**
+     * Runs the program for all register vectors on the common fork join pool. The vectors are updated in place
+     * with the final registers.
+     *
+     * @param budget the maximum number of instructions per run
+     * @return per register vector the number of instructions until the program halted, or NOT_HALTED
+     */
+    public long[] run(int[][] registers, long budget) {
+        long[] result = new long[registers.length];
+        IntStream.range(0, registers.length)
+                .parallel()
+                .forEach(i -> result[i] = run(registers[i], budget));
+        return result;
+    }
+
+    /**
+     * @return the number of instructions until the program halted, or NOT_HALTED
+     */
+    public long run(int[] r, long budget) {
+        int ipRegister = program.getRegisterAsInstructionPointer();
+        long counter = 0;
+        while (counter < budget) {
+            int ip = r[ipRegister];
+            if (!program.isValidInstructionPointer(ip)) {
+                return counter;
+            }
+            AcceleratedLoop loop = acceleratedLoops[ip];
+            long loopInstructions = loop == null ? -1 : loop.execute(r, budget - counter);
+            if (loopInstructions >= 0) {
+                counter += loopInstructions;
+            } else if (program.isBreakpoint(ip)) {
+                program.step(r, ip);
+                r[ipRegister]++;
+                counter++;
+            } else {
+                counter = program.run(r, counter, budget);
+            }
+        }
+        return program.isValidInstructionPointer(r[ipRegister]) ? NOT_HALTED : counter;
+    }
+}
+
+/**
+ * A program compiled to JVM bytecode, see {@link JitCompiler}.
+ */
+class JitProgram {
+    private final MethodHandle run;
+
+    JitProgram(MethodHandle run) {
+        this.run = run;
+    }
+
+    /**
+     * Same contract as {@link CompiledProgram#run(int[], long, long)}, but the generated code also returns when
+     * it jumps to an instruction which does not start a basic block or when a block does not fit in the limit.
+     * The caller then has to interpret (at least) the next instruction.
+     */
+    public long run(int[] r, long counter, long limit) {
+        try {
+            return (long) run.invokeExact(r, counter, limit);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
+
+/**
+ * Translates a {@link CompiledProgram} into a generated class with one case per basic block, so HotSpot can
+ * optimize the guest loop. Writes to the instruction pointer register with a statically known value become
+ * direct jumps; computed jumps go through the block dispatch.
+ */
+class JitCompiler {
+    // HotSpot does not compile huge methods, no use generating them
+    private static final int MAX_INSTRUCTIONS = 500;
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    public static Optional<JitProgram> compile(CompiledProgram program, int nrRegisters) {
+        if (program.size() > MAX_INSTRUCTIONS || !registersInRange(program, nrRegisters)) {
+            return Optional.empty();
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            System.out.println("no java compiler available, falling back to the interpreter");
+            return Optional.empty();
+        }
+
+        String className = "DeviceJit" + classCounter.incrementAndGet();
+        String source = generateSource(className, program, nrRegisters);
+
+        // compile in memory
+        Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+        JavaFileManager fileManager = new ForwardingJavaFileManager<>(compiler.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return classes.computeIfAbsent(name, k -> new ByteArrayOutputStream());
+                    }
+                };
+            }
+        };
+        JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        StringWriter diagnostics = new StringWriter();
+        if (!compiler.getTask(diagnostics, fileManager, null, List.of("-g:none"), null, List.of(sourceFile)).call()) {
+            System.out.println("jit compilation failed, falling back to the interpreter: " + diagnostics);
+            return Optional.empty();
+        }
+
+        ClassLoader classLoader = new ClassLoader(JitCompiler.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                ByteArrayOutputStream bytes = classes.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+            }
+        };
+        try {
+            Class<?> generated = classLoader.loadClass(className);
+            MethodHandle run = MethodHandles.publicLookup().findStatic(generated, "run",
+                    MethodType.methodType(long.class, int[].class, long.class, long.class));
+            return Optional.of(new JitProgram(run));
+        } catch (ReflectiveOperationException e) {
+            System.out.println("jit class loading failed, falling back to the interpreter: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static boolean registersInRange(CompiledProgram program, int nrRegisters) {
+        if (program.getRegisterAsInstructionPointer() >= nrRegisters) {
+            return false;
+        }
+        for (int i = 0; i < program.size(); i++) {
+            int opcode = program.opcode(i);
+            if ((readsRegisterA(opcode) && !inRange(program.argument(i, 0), nrRegisters))
+                    || (readsRegisterB(opcode) && !inRange(program.argument(i, 1), nrRegisters))
+                    || !inRange(program.argument(i, 2), nrRegisters)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean inRange(int registerNr, int nrRegisters) {
+        return registerNr >= 0 && registerNr < nrRegisters;
+    }
+
+    static boolean readsRegisterA(int opcode) {
+        return opcode != CompiledProgram.SETI && opcode != CompiledProgram.GTIR && opcode != CompiledProgram.EQIR;
+    }
+
+    static boolean readsRegisterB(int opcode) {
+        switch (opcode) {
+            case CompiledProgram.ADDR:
+            case CompiledProgram.MULR:
+            case CompiledProgram.BANR:
+            case CompiledProgram.BORR:
+            case CompiledProgram.GTIR:
+            case CompiledProgram.GTRR:
+            case CompiledProgram.EQIR:
+            case CompiledProgram.EQRR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return the value written by the instruction when it only depends on the instruction pointer, empty otherwise
+     */
+    static OptionalInt constantResult(CompiledProgram program, int instructionNr) {
+        int opcode = program.opcode(instructionNr);
+        int ipRegister = program.getRegisterAsInstructionPointer();
+        int a = program.argument(instructionNr, 0);
+        int b = program.argument(instructionNr, 1);
+        if ((readsRegisterA(opcode) && a != ipRegister) || (readsRegisterB(opcode) && b != ipRegister)) {
+            return OptionalInt.empty();
+        }
+        int[] r = new int[ipRegister + 1];
+        r[ipRegister] = instructionNr;
+        return OptionalInt.of(CompiledProgram.evaluate(opcode, a, b, r));
+    }
+
+    /**
+     * A basic block starts at instruction 0, at every static jump target, after every jump and at breakpoints.
+     * For computed jumps the next 2 instructions are assumed targets (the usual compare and skip idiom).
+     */
+    static boolean[] findLeaders(CompiledProgram program) {
+        int size = program.size();
+        int ipRegister = program.getRegisterAsInstructionPointer();
+        boolean[] leaders = new boolean[size + 2];
+        leaders[0] = true;
+        for (int i = 0; i < size; i++) {
+            if (program.isBreakpoint(i)) {
+                leaders[i] = true;
+                leaders[i + 1] = true;
+            }
+            if (program.argument(i, 2) == ipRegister) {
+                leaders[i + 1] = true;
+                OptionalInt target = constantResult(program, i);
+                if (target.isPresent()) {
+                    long next = (long) target.getAsInt() + 1;
+                    if (next >= 0 && next < size) {
+                        leaders[(int) next] = true;
+                    }
+                } else {
+                    leaders[i + 2] = true;
+                }
+            }
+        }
+        return Arrays.copyOf(leaders, size);
+    }
+
+    static String generateSource(String className, CompiledProgram program, int nrRegisters) {
+        int size = program.size();
+        int ipRegister = program.getRegisterAsInstructionPointer();
+        boolean[] leaders = findLeaders(program);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("public final class ").append(className).append(" {\n");
+        sb.append("    public static long run(int[] r, long counter, long limit) {\n");
+        for (int i = 0; i < nrRegisters; i++) {
+            if (i != ipRegister) {
+                sb.append(String.format("        int r%d = r[%d];%n", i, i));
+            }
+        }
+        sb.append(String.format("        int ip = r[%d];%n", ipRegister));
+        sb.append("        dispatch:\n");
+        sb.append("        while (true) {\n");
+        sb.append("            switch (ip) {\n");
+        int i = 0;
+        while (i < size) {
+            sb.append(String.format("                case %d:%n", i));
+            if (program.isBreakpoint(i)) {
+                // let the caller handle the breakpoint
+                sb.append("                    break dispatch;\n");
+                i++;
+                continue;
+            }
+            // block runs until the next leader or the first write to the instruction pointer
+            int end = i;
+            boolean jumps = false;
+            while (end < size && (end == i || !leaders[end])) {
+                jumps = program.argument(end, 2) == ipRegister;
+                end++;
+                if (jumps) {
+                    break;
+                }
+            }
+            int length = end - i;
+            sb.append(String.format("                    if (limit - counter < %d) break dispatch;%n", length));
+            sb.append(String.format("                    counter += %d;%n", length));
+            for (int j = i; j < end; j++) {
+                String expression = expression(program, j);
+                if (program.argument(j, 2) == ipRegister) {
+                    sb.append(String.format("                    ip = (%s) + 1;%n", expression));
+                    sb.append("                    continue dispatch;\n");
+                } else {
+                    sb.append(String.format("                    r%d = %s;%n", program.argument(j, 2), expression));
+                }
+            }
+            if (!jumps) {
+                // fall through into the next block
+                sb.append(String.format("                    ip = %d;%n", end));
+            }
+            i = end;
+        }
+        sb.append("                default:\n");
+        sb.append("                    break dispatch;\n");
+        sb.append("            }\n");
+        sb.append("        }\n");
+        for (int j = 0; j < nrRegisters; j++) {
+            if (j != ipRegister) {
+                sb.append(String.format("        r[%d] = r%d;%n", j, j));
+            }
+        }
+        sb.append(String.format("        r[%d] = ip;%n", ipRegister));
+        sb.append("        return counter;\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static String expression(CompiledProgram program, int instructionNr) {
+        int opcode = program.opcode(instructionNr);
+        int a = program.argument(instructionNr, 0);
+        int b = program.argument(instructionNr, 1);
+        int ipRegister = program.getRegisterAsInstructionPointer();
+        // the instruction pointer register always holds the number of the executing instruction
+        String ra = a == ipRegister ? String.valueOf(instructionNr) : "r" + a;
+        String rb = b == ipRegister ? String.valueOf(instructionNr) : "r" + b;
+        String ia = "(" + a + ")";
+        String ib = "(" + b + ")";
+        switch (opcode) {
+            case CompiledProgram.ADDR: return ra + " + " + rb;
+            case CompiledProgram.ADDI: return ra + " + " + ib;
+            case CompiledProgram.MULR: return ra + " * " + rb;
+            case CompiledProgram.MULI: return ra + " * " + ib;
+            case CompiledProgram.BANR: return ra + " & " + rb;
+            case CompiledProgram.BANI: return ra + " & " + ib;
+            case CompiledProgram.BORR: return ra + " | " + rb;
+            case CompiledProgram.BORI: return ra + " | " + ib;
+            case CompiledProgram.SETR: return ra;
+            case CompiledProgram.SETI: return ia;
+            case CompiledProgram.GTIR: return "(" + ia + " > " + rb + " ? 1 : 0)";
+            case CompiledProgram.GTRI: return "(" + ra + " > " + ib + " ? 1 : 0)";
+            case CompiledProgram.GTRR: return "(" + ra + " > " + rb + " ? 1 : 0)";
+            case CompiledProgram.EQIR: return "(" + ia + " == " + rb + " ? 1 : 0)";
+            case CompiledProgram.EQRI: return "(" + ra + " == " + ib + " ? 1 : 0)";
+            case CompiledProgram.EQRR: return "(" + ra + " == " + rb + " ? 1 : 0)";
+            default:
+                throw new IllegalArgumentException("unknown opcode: " + opcode);
+        }
+    }
+}
+
 public class Day_16 {
 
     private static String FILENAME = "input_16.txt";
+    private static final int NR_OPERATIONS = CompiledProgram.MNEMONICS.length;
+    private static final int ALL_OPERATIONS = (1 << NR_OPERATIONS) - 1;
 
     public static void main(String[] args) throws IOException {
         LocalTime start = LocalTime.now();
@@ -316,7 +1678,8 @@ public class Day_16 {
                                 .mapToInt(Integer::valueOf)
                                 .toArray());
                 lSamples.add(sample);
-            } else {
+            } else if (sample.getAfter() == null) {
+                // the test program lines after the samples are no instructions of a sample
                 sample.setInstruction(
                         Arrays.stream(line.split(" "))
                                 .mapToInt(Integer::valueOf)
@@ -324,18 +1687,8 @@ public class Day_16 {
             }
         }
 
-        Device device = new Device(4);
-
-        long countSamplesWith3OrMoreOpCodes = lSamples.stream()
-                .filter(s -> device.getOperators().values().stream()
-                        .filter(oper -> {
-                            device.setRegister(s.getBefore());
-                            return Arrays.equals(
-                                    oper.apply(s.getInstruction()[1],
-                                            s.getInstruction()[2], s.getInstruction()[3]), s.getAfter());
-                        })
-                        .count() >= 3
-                )
+        long countSamplesWith3OrMoreOpCodes = lSamples.parallelStream()
+                .filter(s -> Integer.bitCount(matchingOperations(s)) >= 3)
                 .count();
         System.out.println("\n#samples with 3 or more matching OpCodes: " + countSamplesWith3OrMoreOpCodes);
 
@@ -349,23 +1702,29 @@ public class Day_16 {
 
         System.out.println();
 
-        Map<Integer, List<OpCode>> mapOpCodeNrToOperations =
-                lSamples.stream()
-                        .flatMap(s -> device.getOperators().values().stream()
-                                .filter(oper -> {
-                                    device.setRegister(s.getBefore());
-                                    return Arrays.equals(oper.apply(s.getInstruction()[1], s.getInstruction()[2], s.getInstruction()[3]), s.getAfter());
-                                })
-                                .map(oper -> new AbstractMap.SimpleEntry<>(s.getInstruction()[0], oper))
-                        )
-                        .distinct()
-                        .collect(Collectors.groupingBy(Map.Entry::getKey, Collectors.mapping(Map.Entry::getValue, Collectors.toList())));
-        mapOpCodeNrToOperations.entrySet().stream().forEach(me -> System.out.println(String.format("opcodenr %d: #operations possible: %d", me.getKey(), me.getValue().size())));
+        // per opcode number a bit mask of the operations matching all its samples
+        int[] candidates = lSamples.parallelStream()
+                .collect(() -> {
+                            int[] masks = new int[NR_OPERATIONS];
+                            Arrays.fill(masks, ALL_OPERATIONS);
+                            return masks;
+                        },
+                        (masks, s) -> masks[s.getInstruction()[0]] &= matchingOperations(s),
+                        (masks, other) -> {
+                            for (int i = 0; i < NR_OPERATIONS; i++) {
+                                masks[i] &= other[i];
+                            }
+                        });
+        for (int i = 0; i < NR_OPERATIONS; i++) {
+            System.out.println(String.format("opcodenr %d: #operations possible: %d", i, Integer.bitCount(candidates[i])));
+        }
 
-        Optional<Map<Integer, OpCode>> mapOpCodeNrToOperation = findOpCodeMapping(mapOpCodeNrToOperations);
+        int[] mapOpCodeNrToOperation = resolveOpCodes(candidates)
+                .orElseThrow(() -> new IllegalStateException("no opcode mapping possible"));
 
-        mapOpCodeNrToOperation.get().entrySet().stream()
-                .forEach(resultLine -> System.out.println("resultLine = " + resultLine));
+        for (int i = 0; i < NR_OPERATIONS; i++) {
+            System.out.println(String.format("resultLine = %d=%s", i, CompiledProgram.MNEMONICS[mapOpCodeNrToOperation[i]]));
+        }
 
         // read test statements
         List<int[]> program = new ArrayList<>();
@@ -389,95 +1748,102 @@ public class Day_16 {
         System.out.println(String.format("read test statements: #%d lines", program.size()));
 
         // run test statements
-        int[] register;
-        OpCode opcode;
-        device.clearRegister();
+        int[] register = new int[4];
         for (int i = 0; i < program.size(); i++) {
             int[] line = program.get(i);
-            opcode = mapOpCodeNrToOperation.get().get(line[0]);
-            opcode.apply(line[1], line[2], line[3]);
-            register = device.getRegister();
+            register[line[3]] = CompiledProgram.evaluate(mapOpCodeNrToOperation[line[0]], line[1], line[2], register);
             System.out.println(String.format("#%03d register: [%d, %d, %d, %d]", i, register[0], register[1], register[2], register[3]));
         }
-        register = device.getRegister();
         System.out.println("\nregister[0] = " + register[0]);
 
         finish = LocalTime.now();
         System.out.println("\nduration (ms): " + Duration.between(start, finish).toMillis());
     }
 
-    private static Optional<Map<Integer, OpCode>> findOpCodeMapping(final Map<Integer, List<OpCode>> mapOpCodeNrToOperations) {
-        // shortcut when map is empty
-        if (mapOpCodeNrToOperations.isEmpty()) {
-            throw new IllegalStateException("invoked with empty map...");
+    /**
+     * Side-effect free, so samples can be checked in parallel.
+     *
+     * @return a bit mask of the operations (in CompiledProgram order) which turn the before into the after registers
+     */
+    static int matchingOperations(Sample sample) {
+        int[] before = sample.getBefore();
+        int[] after = sample.getAfter();
+        int a = sample.getInstruction()[1];
+        int b = sample.getInstruction()[2];
+        int c = sample.getInstruction()[3];
+        if (c < 0 || c >= after.length) {
+            return 0;
         }
-        // shortcut when not resolvable i.e. contains an empty list for any opcode
-        if (mapOpCodeNrToOperations.values().stream().anyMatch(l -> l.size() == 0)) {
-            return Optional.empty();
+        // all registers except C must be unchanged
+        for (int i = 0; i < before.length; i++) {
+            if (i != c && before[i] != after[i]) {
+                return 0;
+            }
         }
-        // shortcut when we have 1 opcode
-        if (mapOpCodeNrToOperations.size() == 1) {
-            Map.Entry<Integer, List<OpCode>> onlyEntry = mapOpCodeNrToOperations.entrySet().iterator().next();
-            if (onlyEntry.getValue().size() == 1) {
-                // return this success
-                return Optional.of(new TreeMap<>() {
-                    {
-                        put(onlyEntry.getKey(), onlyEntry.getValue().get(0));
+        boolean registerA = a >= 0 && a < before.length;
+        boolean registerB = b >= 0 && b < before.length;
+        int mask = 0;
+        for (int operation = 0; operation < NR_OPERATIONS; operation++) {
+            if ((JitCompiler.readsRegisterA(operation) && !registerA) || (JitCompiler.readsRegisterB(operation) && !registerB)) {
+                continue;
+            }
+            if (CompiledProgram.evaluate(operation, a, b, before) == after[c]) {
+                mask |= 1 << operation;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Constraint propagation: an opcode number with a single candidate operation removes that operation from all
+     * other opcode numbers. When that gets stuck, try the candidates of the opcode number with the fewest.
+     *
+     * @return per opcode number the operation
+     */
+    static Optional<int[]> resolveOpCodes(int[] candidates) {
+        int[] masks = candidates.clone();
+        int[] result = new int[masks.length];
+        Arrays.fill(result, -1);
+        int resolved = 0;
+        boolean progress = true;
+        while (resolved < masks.length && progress) {
+            progress = false;
+            for (int i = 0; i < masks.length; i++) {
+                if (result[i] < 0 && Integer.bitCount(masks[i]) == 1) {
+                    result[i] = Integer.numberOfTrailingZeros(masks[i]);
+                    resolved++;
+                    progress = true;
+                    for (int j = 0; j < masks.length; j++) {
+                        if (j != i) {
+                            masks[j] &= ~masks[i];
+                        }
                     }
-                });
-            } else {
-                // not solvable:  multiple options
-                System.out.println(String.format("not solvable: multiple options for only entry %d: %s", onlyEntry.getKey(), onlyEntry.getValue()));
-                return Optional.empty();
-            }
-        }
-
-        // result Map
-        Optional<Map<Integer, OpCode>> result = Optional.of(new TreeMap<>());
-
-        // get an operation code with the lowest number of possibilities
-        Map.Entry<Integer, List<OpCode>> opcodeOptions = mapOpCodeNrToOperations.entrySet().stream()
-                .min(Comparator.comparingInt(m -> m.getValue().size()))
-                .get();
-
-        // try all options for this operation code
-        Integer opcodeNumber = opcodeOptions.getKey();
-        List<OpCode> opcodes = opcodeOptions.getValue();
-        boolean solved = false;
-        for (int i = 0; i < opcodes.size() && !solved; i++) {
-            OpCode opcode = opcodes.get(i);
-            System.out.println(String.format("trying opcodeNumber->opcode: %d->%s (%d options)", opcodeNumber, opcode.toString(), opcodes.size()));
-            // filter the current opcode from the map, both as key and in the values (of other keys)
-            Map<Integer, List<OpCode>> mapRemainder = removeOpCodeFromMap(mapOpCodeNrToOperations, opcodeNumber, opcode);
-            // try to find solution for the remainder
-            Optional<Map<Integer, OpCode>> mapRemainderResult = findOpCodeMapping(mapRemainder);
-            if (mapRemainderResult.isPresent()) {
-                // add the assumption to the result
-                result = mapRemainderResult;
-                result.get().put(opcodeNumber, opcode);
-                solved = true;
-            } else {
-                System.out.println(String.format("not solvable: opcodeNumber->opcode: %d->%s (%d possible options)", opcodeNumber, opcode.toString(), opcodes.size()));
+                } else if (result[i] < 0 && masks[i] == 0) {
+                    // not solvable
+                    return Optional.empty();
+                }
             }
         }
-        if (!solved) {
-            System.out.println(String.format("not solvable for opcodeNumber %d", opcodeNumber));
-            return Optional.empty();
+        if (resolved == masks.length) {
+            return Optional.of(result);
         }
 
-        return result;
-    }
-
-    private static Map<Integer, List<OpCode>> removeOpCodeFromMap(Map<Integer, List<OpCode>> mapOpCodeNrToOperations, Integer opcodeNumber, OpCode opcode) {
-        Map<Integer, List<OpCode>> result;
-        result = mapOpCodeNrToOperations.entrySet().stream()
-                .filter(me -> !me.getKey().equals(opcodeNumber))
-                .collect(Collectors.toMap(k -> k.getKey(),
-                        v -> v.getValue().stream()
-                                .filter(val -> !val.equals(opcode))
-                                .collect(Collectors.toList())
-                ));
-        return result;
+        // guess for the opcode number with the lowest number of possibilities
+        int guess = -1;
+        for (int i = 0; i < masks.length; i++) {
+            if (result[i] < 0 && (guess < 0 || Integer.bitCount(masks[i]) < Integer.bitCount(masks[guess]))) {
+                guess = i;
+            }
+        }
+        for (int options = masks[guess]; options != 0; options &= options - 1) {
+            int[] attempt = masks.clone();
+            attempt[guess] = Integer.lowestOneBit(options);
+            Optional<int[]> solution = resolveOpCodes(attempt);
+            if (solution.isPresent()) {
+                return solution;
+            }
+        }
+        return Optional.empty();
     }
 
     private static List<String> readFile(String[] args) throws IOException {
@@ -34,12 +34,22 @@ class Ground {
     public static final char SETTLED_WATER = '~';
     public static final char WATER_SPRING = '+';
 
-    private char[][] ground;
+    private final Grid ground;
     private int minX;
     private int maxX;
     private int minY;
     private int maxY;
     private int lowestWaterlevel;
+    // live counters, updated on every change of a cell (see setCell): flowing and settled water in all rows and in
+    // the rows of the scan (minY..maxY) and per row the counts and the x extent of the water (-1 when none)
+    private int nrWater = 0;
+    private int nrSettledWater = 0;
+    private int nrWaterInScan = 0;
+    private int nrSettledWaterInScan = 0;
+    private final int[] nrWaterInRow;
+    private final int[] nrSettledWaterInRow;
+    private final int[] waterMinX;
+    private final int[] waterMaxX;
 
     Ground(int minX, int maxX, int minY, int maxY) {
         this.minX = minX;
@@ -49,21 +59,56 @@ class Ground {
 
         lowestWaterlevel = minY;
 
-        ground = new char[maxX + 10][maxY + 2];
-        for (char[] row : ground)
-            Arrays.fill(row, SAND);
+        // SAND is the first character, so a new grid is all sand
+        ground = new Grid(maxX + 10, maxY + 2, new Grid.CellCodec(SAND + "" + CLAY + WATER + SETTLED_WATER));
+        nrWaterInRow = new int[ground.getHeight()];
+        nrSettledWaterInRow = new int[ground.getHeight()];
+        waterMinX = new int[ground.getHeight()];
+        waterMaxX = new int[ground.getHeight()];
+        Arrays.fill(waterMinX, -1);
+        Arrays.fill(waterMaxX, -1);
+    }
+
+    /**
+     * Sets the cell and updates the water counters, all changes of the ground go through here.
+     */
+    private void setCell(int x, int y, char c) {
+        char old = ground.get(x, y);
+        if (old == c) {
+            return;
+        }
+        ground.set(x, y, c);
+        count(old, y, -1);
+        count(c, y, 1);
+        if (c == WATER || c == SETTLED_WATER) {
+            if (waterMinX[y] < 0 || x < waterMinX[y]) waterMinX[y] = x;
+            if (x > waterMaxX[y]) waterMaxX[y] = x;
+        }
+    }
+
+    private void count(char c, int y, int delta) {
+        boolean inScan = y >= minY && y <= maxY;
+        if (c == WATER) {
+            nrWater += delta;
+            nrWaterInRow[y] += delta;
+            if (inScan) nrWaterInScan += delta;
+        } else if (c == SETTLED_WATER) {
+            nrSettledWater += delta;
+            nrSettledWaterInRow[y] += delta;
+            if (inScan) nrSettledWaterInScan += delta;
+        }
     }
 
     public void addClay(ClayInput clayInput) {
         switch (clayInput.getFixedCoordinateType()) {
             case ClayInput.FIXED_COORDINATE_TYPE_X:
                 for (int y = clayInput.getRangeStart(); y <= clayInput.getRangeEnd(); y++) {
-                    ground[clayInput.getFixedCoordinate()][y] = CLAY;
+                    setCell(clayInput.getFixedCoordinate(), y, CLAY);
                 }
                 break;
             case ClayInput.FIXED_COORDINATE_TYPE_Y:
                 for (int x = clayInput.getRangeStart(); x <= clayInput.getRangeEnd(); x++) {
-                    ground[x][clayInput.getFixedCoordinate()] = CLAY;
+                    setCell(x, clayInput.getFixedCoordinate(), CLAY);
                 }
                 break;
         }
@@ -72,40 +117,39 @@ class Ground {
 
     public void print() {
         System.out.println("\n");
-        for (int y = 0; y <= lowestWaterlevel + 1 && y < ground[0].length; y++) {
-            for (int x = Math.max(minX - 5, 0); x < ground.length; x++) {
+        StringBuilder sb = new StringBuilder();
+        for (int y = 0; y <= lowestWaterlevel + 1 && y < ground.getHeight(); y++) {
+            for (int x = Math.max(minX - 5, 0); x < ground.getWidth(); x++) {
                 if (x == 500 && y == 0) {
-                    System.out.print(WATER_SPRING);
+                    sb.append(WATER_SPRING);
                 } else {
-                    System.out.print(ground[x][y]);
+                    sb.append(ground.get(x, y));
                 }
             }
-            System.out.println("");
+            sb.append(System.lineSeparator());
         }
+        System.out.print(sb);
         System.out.println("\n");
     }
 
     public int countTotalWater() {
-        int total = 0;
-        for (int y = 0; y < ground[0].length; y++) {
-            for (int x = 0; x < ground.length; x++) {
-                if (ground[x][y] == WATER || ground[x][y] == SETTLED_WATER) {
-                    total++;
-                }
-            }
-        }
-        return total;
+        return nrWater + nrSettledWater;
     }
 
     public int countWater() {
         return countType(WATER) + countType(SETTLED_WATER);
     }
 
+    /**
+     * @return the number of cells of the type in the rows of the scan, from the counters for (settled) water
+     */
     public int countType(char type) {
+        if (type == WATER) return nrWaterInScan;
+        if (type == SETTLED_WATER) return nrSettledWaterInScan;
         int nrType = 0;
         for (int y = minY; y <= maxY; y++) {
-            for (int x = Math.max(minX - 50, 0); x < ground.length; x++) {
-                if (ground[x][y] == type) {
+            for (int x = Math.max(minX - 50, 0); x < ground.getWidth(); x++) {
+                if (ground.get(x, y) == type) {
                     nrType++;
                 }
             }
@@ -113,10 +157,32 @@ class Ground {
         return nrType;
     }
 
+    public int getNrWaterInRow(int y) {
+        return nrWaterInRow[y];
+    }
+
+    public int getNrSettledWaterInRow(int y) {
+        return nrSettledWaterInRow[y];
+    }
+
+    /**
+     * @return the lowest x with (settled) water in the row or -1 when there is no water in the row
+     */
+    public int getWaterMinX(int y) {
+        return waterMinX[y];
+    }
+
+    /**
+     * @return the highest x with (settled) water in the row or -1 when there is no water in the row
+     */
+    public int getWaterMaxX(int y) {
+        return waterMaxX[y];
+    }
+
     public void addWater(int x, int y) {
         // check how far down the water can flow down
-        while (y < ground[0].length && ground[x][y] == SAND) {
-            ground[x][y] = WATER;
+        while (y < ground.getHeight() && ground.get(x, y) == SAND) {
+            setCell(x, y, WATER);
             y++;
             if (y > lowestWaterlevel) {
                 lowestWaterlevel = y;
@@ -127,18 +193,18 @@ class Ground {
     public void settleWater(int x, int y) {
         // check if bounded left and right by clay and on solid ground
         int start = x;
-        while (ground[start][y] == WATER && isStableGround(start, y + 1)) {
+        while (ground.get(start, y) == WATER && isStableGround(start, y + 1)) {
             start--;
         }
-        if (ground[start][y] == CLAY && isStableGround(start, y + 1)) {
+        if (ground.get(start, y) == CLAY && isStableGround(start, y + 1)) {
             int end = x;
-            while (ground[end][y] == WATER && isStableGround(end, y + 1)) {
+            while (ground.get(end, y) == WATER && isStableGround(end, y + 1)) {
                 end++;
             }
-            if (ground[end][y] == CLAY && isStableGround(end, y + 1)) {
+            if (ground.get(end, y) == CLAY && isStableGround(end, y + 1)) {
                 // turn this water into settled
                 for (int i = start + 1; i < end; i++) {
-                    ground[i][y] = SETTLED_WATER;
+                    setCell(i, y, SETTLED_WATER);
                 }
             }
 
@@ -147,8 +213,8 @@ class Ground {
     }
 
     public void flowWaterLeft(int x, int y) {
-        while (x >= minX && ground[x][y] == SAND && ground[x][y + 1] != WATER) {
-            ground[x][y] = WATER;
+        while (x >= minX && ground.get(x, y) == SAND && ground.get(x, y + 1) != WATER) {
+            setCell(x, y, WATER);
             if (isStableGround(x, y + 1)) {
                 x--;
             } else {
@@ -160,8 +226,8 @@ class Ground {
 
 
     public void flowWaterRight(int x, int y) {
-        while (x <= ground.length && ground[x][y] == SAND && ground[x][y + 1] != WATER) {
-            ground[x][y] = WATER;
+        while (x <= ground.getWidth() && ground.get(x, y) == SAND && ground.get(x, y + 1) != WATER) {
+            setCell(x, y, WATER);
             if (isStableGround(x, y + 1)) {
                 x++;
             } else {
@@ -173,17 +239,68 @@ class Ground {
     }
 
     private boolean isStableGround(int x, int y) {
-        return ground[x][y] == CLAY || ground[x][y] == SETTLED_WATER;
+        return ground.get(x, y) == CLAY || ground.get(x, y) == SETTLED_WATER;
     }
 
-    public boolean waterStillFlowing() {
-        int nrWaterFlowing = countType(WATER);
-        int nrWaterSettled = countType(SETTLED_WATER);
+    /**
+     * Lets the water from the spring at x/y flow until nothing changes, in 1 pass: the water falls down a column,
+     * spreads over clay or settled water, falls over the edges (handled first, recursively per edge) and then
+     * settles the rows bounded by clay on both sides, from the bottom up.
+     */
+    public void flow(int x, int y) {
+        int top = y;
+        // fall
+        while (y <= maxY && ground.get(x, y) == SAND) {
+            setCell(x, y, WATER);
+            y++;
+        }
+        lowestWaterlevel = Math.max(lowestWaterlevel, Math.min(y, maxY));
+        if (y > maxY || !isStableGround(x, y)) {
+            // out of the scan or on flowing water: flows away
+            return;
+        }
+        // spread and settle from the bottom up as long as the rows are bounded
+        for (y--; y >= top; y--) {
+            int left = spread(x, y, -1);
+            int right = spread(x, y, 1);
+            if (left < 0 || right < 0) {
+                return;
+            }
+            for (int i = left + 1; i < right; i++) {
+                setCell(i, y, SETTLED_WATER);
+            }
+        }
+    }
 
-        for (int y = Math.min(lowestWaterlevel, ground[0].length - 2); y >= 0; y--) {
-            for (int x = ground.length - 1; x >= 0 && x >= minX - 10; x--) {
-                if (ground[x][y] == WATER) {
-                    if (ground[x][y + 1] != WATER) {
+    /**
+     * Spreads the water at x/y in the direction dx over stable ground, falling over an edge.
+     *
+     * @return the x of the bounding clay or -1 when the water flows over an edge
+     */
+    private int spread(int x, int y, int dx) {
+        for (x += dx; ground.get(x, y) != CLAY; x += dx) {
+            if (ground.get(x, y) == SAND) {
+                setCell(x, y, WATER);
+            }
+            if (ground.get(x, y + 1) == SAND) {
+                flow(x, y + 1);
+            }
+            if (!isStableGround(x, y + 1)) {
+                return -1;
+            }
+        }
+        return x;
+    }
+
+    public boolean waterStillFlowing() {
+        // every change turns sand into water or water into settled water, so the counters show any change
+        int nrWaterFlowing = nrWater;
+        int nrWaterSettled = nrSettledWater;
+
+        for (int y = Math.min(lowestWaterlevel, ground.getHeight() - 2); y >= 0; y--) {
+            for (int x = ground.getWidth() - 1; x >= 0 && x >= minX - 10; x--) {
+                if (ground.get(x, y) == WATER) {
+                    if (ground.get(x, y + 1) != WATER) {
                         flowWaterLeft(x - 1, y);
                         flowWaterRight(x + 1, y);
                     }
@@ -191,7 +308,7 @@ class Ground {
                 }
             }
         }
-        return nrWaterFlowing != countType(WATER) || nrWaterSettled != countType(SETTLED_WATER);
+        return nrWaterFlowing != nrWater || nrWaterSettled != nrSettledWater;
     }
 }
 
@@ -236,19 +353,13 @@ public class Day_17 {
         System.out.println("\n#clayList = " + clayList.size());
         ground.print();
 
-        ground.addWater(500, 0);
+        // use flow or addWater + waterStillFlowing (until nothing changes)
+        ground.flow(500, 0);
         ground.print();
 
-        int iterations = 0;
-        while (ground.waterStillFlowing()) {
-            ground.print();
-            System.out.println("ground.countWater() = " + ground.countWater());
-            iterations++;
-        }
         int nrWater = ground.countWater();
         System.out.println("nrWater = " + nrWater);
         System.out.println("countTotalWater = " + ground.countTotalWater());
-        System.out.println("iterations = " + iterations);
 
         LocalTime finish = LocalTime.now();
         System.out.println("duration (ms): " + Duration.between(start, finish).toMillis());
@@ -10,17 +10,221 @@ import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toList;
 
+/**
+ * The acres as 2 bit-planes, one for the trees and one for the lumberyards (open ground is neither), of a long per
+ * 64 acres of a row: bit i of word w of a row is x = w * 64 + i.
+ * The rows have a zero word on both sides and there is a zero row above and below, so the neighbours of every acre
+ * can be read without bounds checks.
+ * A minute computes, per word, the number of tree and lumberyard neighbours of 64 acres at once with bit-sliced
+ * adders: for every bit position the count is spread over the bits of a few words.
+ */
+class AcreBitboard {
+    @Getter
+    private final int width;
+    @Getter
+    private final int height;
+    private final int wordsPerRow;
+    // words per row including the zero words
+    private final int stride;
+    // the bits of the last word of a row that are acres
+    private final long lastWordMask;
+    private long[] trees;
+    private long[] lumberyards;
+    private long[] nextTrees;
+    private long[] nextLumberyards;
+    // the result of neighbourCount, reused
+    private final long[] counts = new long[2];
+
+    AcreBitboard(int width, int height) {
+        this.width = width;
+        this.height = height;
+        wordsPerRow = (width + Long.SIZE - 1) / Long.SIZE;
+        stride = wordsPerRow + 2;
+        lastWordMask = width % Long.SIZE == 0 ? -1L : (1L << width % Long.SIZE) - 1;
+        trees = new long[stride * (height + 2)];
+        lumberyards = new long[trees.length];
+        nextTrees = new long[trees.length];
+        nextLumberyards = new long[trees.length];
+    }
+
+    /**
+     * Bitboard of the acres in the grid.
+     */
+    AcreBitboard(Grid acres) {
+        this(acres.getWidth(), acres.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                set(x, y, acres.get(x, y));
+            }
+        }
+    }
+
+    /**
+     * Copy of the other bitboard.
+     */
+    AcreBitboard(AcreBitboard other) {
+        this(other.width, other.height);
+        System.arraycopy(other.trees, 0, trees, 0, trees.length);
+        System.arraycopy(other.lumberyards, 0, lumberyards, 0, lumberyards.length);
+    }
+
+    private int index(int x, int y) {
+        return (y + 1) * stride + 1 + x / Long.SIZE;
+    }
+
+    public char get(int x, int y) {
+        long bit = 1L << x;
+        int i = index(x, y);
+        if ((trees[i] & bit) != 0) return Landscape.TREES;
+        if ((lumberyards[i] & bit) != 0) return Landscape.LUMBERYARD;
+        return Landscape.OPEN_GROUND;
+    }
+
+    public void set(int x, int y, char c) {
+        long bit = 1L << x;
+        int i = index(x, y);
+        trees[i] &= ~bit;
+        lumberyards[i] &= ~bit;
+        switch (c) {
+            case Landscape.TREES:
+                trees[i] |= bit;
+                break;
+            case Landscape.LUMBERYARD:
+                lumberyards[i] |= bit;
+                break;
+            case Landscape.OPEN_GROUND:
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("unknown acre type: %s at [%d][%d]", c, x, y));
+        }
+    }
+
+    /**
+     * @return the acres in a grid of the codec
+     */
+    public Grid toGrid(Grid.CellCodec codec) {
+        Grid grid = new Grid(width, height, codec);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                grid.set(x, y, get(x, y));
+            }
+        }
+        return grid;
+    }
+
+    public int countTrees() {
+        return count(trees);
+    }
+
+    public int countLumberyards() {
+        return count(lumberyards);
+    }
+
+    private static int count(long[] plane) {
+        int count = 0;
+        for (long word : plane) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * An open acre with 3 or more adjacent trees becomes trees, trees with 3 or more adjacent lumberyards become a
+     * lumberyard and a lumberyard stays a lumberyard with at least 1 adjacent lumberyard and 1 adjacent trees,
+     * otherwise it becomes open.
+     */
+    public void nextMinute() {
+        for (int y = 0; y < height; y++) {
+            for (int w = 0; w < wordsPerRow; w++) {
+                int i = (y + 1) * stride + 1 + w;
+                long tree = trees[i];
+                long lumberyard = lumberyards[i];
+                long open = ~(tree | lumberyard);
+
+                long[] counts = neighbourCount(trees, i);
+                long treesAtLeast1 = counts[0];
+                long treesAtLeast3 = counts[1];
+                counts = neighbourCount(lumberyards, i);
+                long lumberyardsAtLeast1 = counts[0];
+                long lumberyardsAtLeast3 = counts[1];
+
+                long newTrees = open & treesAtLeast3 | tree & ~lumberyardsAtLeast3;
+                long newLumberyards = tree & lumberyardsAtLeast3 | lumberyard & lumberyardsAtLeast1 & treesAtLeast1;
+                long mask = w == wordsPerRow - 1 ? lastWordMask : -1L;
+                nextTrees[i] = newTrees & mask;
+                nextLumberyards[i] = newLumberyards & mask;
+            }
+        }
+        long[] swap = trees;
+        trees = nextTrees;
+        nextTrees = swap;
+        swap = lumberyards;
+        lumberyards = nextLumberyards;
+        nextLumberyards = swap;
+    }
+
+    /**
+     * Adds the 8 neighbour bits of the 64 acres of word i of the plane with full adders.
+     *
+     * @return per acre: at least 1 neighbour (index 0) and at least 3 neighbours (index 1), the same array every call
+     */
+    private long[] neighbourCount(long[] plane, int i) {
+        int up = i - stride;
+        int down = i + stride;
+        // the neighbours to the west (x - 1) and to the east (x + 1) shifted to the position of the acre
+        long a = plane[up] << 1 | plane[up - 1] >>> 63;
+        long b = plane[up];
+        long c = plane[up] >>> 1 | plane[up + 1] << 63;
+        long d = plane[i] << 1 | plane[i - 1] >>> 63;
+        long e = plane[i] >>> 1 | plane[i + 1] << 63;
+        long f = plane[down] << 1 | plane[down - 1] >>> 63;
+        long g = plane[down];
+        long h = plane[down] >>> 1 | plane[down + 1] << 63;
+
+        // ones: 3 full adders and a half adder, the carries count twice
+        long abc = a ^ b ^ c;
+        long carryAbc = a & b | c & (a ^ b);
+        long def = d ^ e ^ f;
+        long carryDef = d & e | f & (d ^ e);
+        long gh = g ^ h;
+        long carryGh = g & h;
+        long ones = abc ^ def ^ gh;
+        long carryOnes = abc & def | gh & (abc ^ def);
+        // twos: the parity of the 4 carries, at least 4 is 2 or more of the carries
+        long twos = carryAbc ^ carryDef ^ carryGh ^ carryOnes;
+        long atLeast4 = carryAbc & carryDef | carryGh & carryOnes | (carryAbc ^ carryDef) & (carryGh ^ carryOnes);
+
+        counts[0] = a | b | c | d | e | f | g | h;
+        counts[1] = atLeast4 | twos & ones;
+        return counts;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AcreBitboard)) return false;
+        AcreBitboard other = (AcreBitboard) o;
+        return width == other.width && height == other.height
+                && Arrays.equals(trees, other.trees) && Arrays.equals(lumberyards, other.lumberyards);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(trees) + Arrays.hashCode(lumberyards);
+    }
+}
+
 class Landscape {
     public static final char TREES = '|';
     public static final char OPEN_GROUND = '.';
     public static final char LUMBERYARD = '#';
+    private static final Grid.CellCodec CODEC = new Grid.CellCodec(OPEN_GROUND + "" + TREES + LUMBERYARD);
 
     @Getter
-    private char[][] acres;
+    private AcreBitboard bitboard;
     List<String> inputLines;
 
     Landscape(List<String> inputLines) {
@@ -33,105 +237,50 @@ class Landscape {
     }
 
     private void constructLandscapeFromInputlines(List<String> inputLines) {
-        acres = new char[inputLines.get(0).length()][inputLines.size()];
-        for (int y = 0; y < acres[0].length; y++) {
-            for (int x = 0; x < acres.length; x++) {
-                acres[x][y] = inputLines.get(y).charAt(x);
+        Grid acres = new Grid(inputLines.get(0).length(), inputLines.size(), CODEC);
+        for (int y = 0; y < acres.getHeight(); y++) {
+            for (int x = 0; x < acres.getWidth(); x++) {
+                acres.set(x, y, inputLines.get(y).charAt(x));
             }
         }
+        bitboard = new AcreBitboard(acres);
+    }
+
+    /**
+     * @return the acres (a copy)
+     */
+    public Grid getAcres() {
+        return bitboard.toGrid(CODEC);
     }
 
     public void print() {
         System.out.println("\n");
-        for (int y = 0; y < acres[0].length; y++) {
-            for (int x = 0; x < acres.length; x++) {
-                System.out.print(acres[x][y]);
+        StringBuilder sb = new StringBuilder();
+        for (int y = 0; y < bitboard.getHeight(); y++) {
+            for (int x = 0; x < bitboard.getWidth(); x++) {
+                sb.append(bitboard.get(x, y));
             }
-            System.out.println("");
+            sb.append(System.lineSeparator());
         }
+        System.out.print(sb);
         System.out.println("\n");
     }
 
     public int countType(char type) {
-        int nrType = 0;
-        for (int y = 0; y < acres[0].length; y++) {
-            for (int x = 0; x < acres.length; x++) {
-                if (acres[x][y] == type) {
-                    nrType++;
-                }
-            }
+        switch (type) {
+            case TREES:
+                return bitboard.countTrees();
+            case LUMBERYARD:
+                return bitboard.countLumberyards();
+            case OPEN_GROUND:
+                return bitboard.getWidth() * bitboard.getHeight() - bitboard.countTrees() - bitboard.countLumberyards();
+            default:
+                return 0;
         }
-        return nrType;
-    }
-
-    private List<Square> getNeighbourSquares(int x, int y) {
-        List<Square> ls = List.of(
-                new Square(x - 1, y - 1),
-                new Square(x, y - 1),
-                new Square(x + 1, y - 1),
-                new Square(x - 1, y),
-                new Square(x + 1, y),
-                new Square(x - 1, y + 1),
-                new Square(x, y + 1),
-                new Square(x + 1, y + 1)
-        ).stream()
-                .filter(sq -> isValidSquare(sq.getX(), sq.getY()))
-                .collect(Collectors.toList());
-
-        return ls;
-    }
-
-    private boolean isValidSquare(int x, int y) {
-        if (x < 0) return false;
-        if (y < 0) return false;
-        if (x >= acres.length) return false;
-        if (y >= acres[0].length) return false;
-        return true;
     }
 
     public void nextMinute() {
-        char[][] newAcres = new char[acres[0].length][acres.length];
-        // copy old array
-        for (int x = 0; x < acres[0].length; x++) {
-            System.arraycopy(acres[x], 0, newAcres[x], 0, acres[x].length);
-        }
-
-        for (int y = 0; y < acres[0].length; y++) {
-            for (int x = 0; x < acres.length; x++) {
-                List<Square> listNeighbours = getNeighbourSquares(x, y);
-                switch (acres[x][y]) {
-                    case OPEN_GROUND:
-                        if (listNeighbours.stream()
-                                .filter(sq -> acres[sq.getX()][sq.getY()] == TREES)
-                                .count() >= 3) {
-                            newAcres[x][y] = TREES;
-                        }
-                        break;
-                    case TREES:
-                        if (listNeighbours.stream()
-                                .filter(sq -> acres[sq.getX()][sq.getY()] == LUMBERYARD)
-                                .count() >= 3) {
-                            newAcres[x][y] = LUMBERYARD;
-                        }
-                        break;
-                    case LUMBERYARD:
-                        if (listNeighbours.stream()
-                                .filter(sq -> acres[sq.getX()][sq.getY()] == LUMBERYARD)
-                                .count() >= 1
-                                && listNeighbours.stream()
-                                .filter(sq -> acres[sq.getX()][sq.getY()] == TREES)
-                                .count() >= 1) {
-                            newAcres[x][y] = LUMBERYARD;
-                        } else {
-                            newAcres[x][y] = OPEN_GROUND;
-                        }
-                        break;
-                    default:
-                        throw new IllegalStateException(String.format("unknown acre type: %s at [%d][%d]", acres[x][y], x, y));
-                }
-            }
-        }
-        acres = newAcres;
+        bitboard.nextMinute();
     }
 
     public int getNrOfTreeAcres() {
@@ -183,19 +332,19 @@ public class Day_18 {
         landscape.reset();
         landscape.print();
 
-        List<char[][]> listAcres = new ArrayList();
+        List<AcreBitboard> listAcres = new ArrayList();
         minute = 0;
         int duplicateMinute = -1;
         boolean noDuplicate = true;
         while (noDuplicate) {
             minute++;
-            listAcres.add(landscape.getAcres());
+            listAcres.add(new AcreBitboard(landscape.getBitboard()));
             landscape.nextMinute();
             System.out.println("minute = " + minute);
             landscape.print();
             // check for duplicate
             for (int i = 0; i < listAcres.size(); i++) {
-                if (Arrays.deepEquals(listAcres.get(i), landscape.getAcres())) {
+                if (listAcres.get(i).equals(landscape.getBitboard())) {
                     duplicateMinute = i;
                     noDuplicate = false;
                 }
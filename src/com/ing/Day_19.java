@@ -51,6 +51,9 @@ public class Day_19 {
         System.out.println("\nduration (ms): " + Duration.between(start, finish).toMillis());
 
         // part 2
+        // the program sums the divisors of a big number, for this number the 32 bit products b * c of the guest code
+        // wrap (so the exact device result is not the divisor sum): run the setup until it jumps back to instruction 1,
+        // take the number from the register the inner loop compares with (eqrr) and sum its divisors here
 
         start = LocalTime.now();
 
@@ -60,20 +63,37 @@ public class Day_19 {
         Arrays.fill(r, 0);
         r[0] = 1;
         device.setRegister(r);
-        device.setMaxInstructionsToExecute(25);
-        device.setPrintDebugging(true);
-        try {
-            device.executeProgram(program);
-        } catch (IllegalStateException e) {
-            System.out.println("caught IllegalStateException: " + e.getMessage());
-        }
-        System.out.println("register[0] = " + device.getRegister()[0]);
+        int numberRegister = program.getStatements().stream()
+                .filter(statement -> "eqrr".equals(statement.getOperation()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("no eqrr in the program"))
+                .getArguments()[1];
+        int[] number = {0};
+        device.addWatchpoint(1, numberRegister, value -> {
+            number[0] = value;
+            return true;
+        });
+        device.executeProgram(program);
+        device.clearWatchpoints();
+        System.out.println("number = " + number[0]);
+        System.out.println("register[0] = " + sumOfDivisors(number[0]));
 
 
         finish = LocalTime.now();
         System.out.println("\nduration (ms): " + Duration.between(start, finish).toMillis());
     }
 
+    private static long sumOfDivisors(int n) {
+        long sum = 0;
+        for (long d = 1; d * d <= n; d++) {
+            if (n % d == 0) {
+                sum += d;
+                if (d * d != n) sum += n / d;
+            }
+        }
+        return sum;
+    }
+
     private static List<String> readFile(String[] args) throws IOException {
         String fileName;
         if (args.length == 0) {
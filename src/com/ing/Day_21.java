@@ -31,31 +31,36 @@ public class Day_21 {
                 .filter(stmt -> "eqrr".equals(stmt.getOperation()))
                 .collect(toList())
                 .get(0);
+        int registerWhichGetsComparedWithRegister0;
         if (statement.getArguments()[0] != 0) {
-            device.setRegisterWhichGetsComparedWithRegister0(statement.getArguments()[0]);
+            registerWhichGetsComparedWithRegister0 = statement.getArguments()[0];
         } else if (statement.getArguments()[1] != 0) {
-            device.setRegisterWhichGetsComparedWithRegister0(statement.getArguments()[1]);
+            registerWhichGetsComparedWithRegister0 = statement.getArguments()[1];
         } else {
             throw new IllegalStateException("no register found");
         }
-        device.setDay21InstructionNr(program.getStatements().indexOf(statement));
-
-        // part 1
-        device.setCheckDay21Condition(true);
+        int instructionNr = program.getStatements().indexOf(statement);
+
+        // part 1: the first value compared with register 0 halts the program
+        int[] part1Output = {-1};
+        device.addWatchpoint(instructionNr, registerWhichGetsComparedWithRegister0, value -> {
+            part1Output[0] = value;
+            return true;
+        });
         device.executeProgram(program);
-        System.out.println("lowest value for register[0] = " + device.getDay21Part1Output());
+        System.out.println("lowest value for register[0] = " + part1Output[0]);
 
         LocalTime finish = LocalTime.now();
         System.out.println("\nduration (ms): " + Duration.between(start, finish).toMillis());
 
-        // part 2
+        // part 2: the last new value before the values start repeating
         start = LocalTime.now();
 
         device.clearRegister();
-        device.setCheckDay21Condition(true);
-        device.setDay21PartTwo(true);
-        device.executeProgram(program);
-        System.out.println("\nlowest value for register[0] = " + device.getDay21Part2Output());
+        device.clearWatchpoints();
+        long[] haltingValues = device.haltingValues(program, instructionNr, registerWhichGetsComparedWithRegister0);
+        System.out.println("#values before repeat = " + haltingValues.length);
+        System.out.println("\nlowest value for register[0] = " + haltingValues[haltingValues.length - 1]);
 
         finish = LocalTime.now();
         System.out.println("\nduration (ms): " + Duration.between(start, finish).toMillis());
@@ -12,12 +12,7 @@ import java.time.Duration;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -53,6 +48,181 @@ class RegionWithGear implements Comparable {
     }
 }
 
+/**
+ * The erosion levels of the cave in chunks of CHUNK_SIZE x CHUNK_SIZE regions, created on demand when a region is
+ * first touched, so the grid grows with the explored part of the cave and is not bounded (only x and y below 0 are
+ * solid rock).
+ * The erosion level of a region depends on the regions to the left and above, so a chunk is computed at once, row by
+ * row, after the chunks to the left and above: no recursion. The levels are modulo 20183, so they fit in an int.
+ * <p>
+ * A region has a tile number: chunk number * CHUNK_AREA + (y % CHUNK_SIZE) * CHUNK_SIZE + x % CHUNK_SIZE.
+ * The chunks are numbered in order of creation, so the tile numbers are dense.
+ */
+class CaveGrid {
+    public static final int CHUNK_BITS = 5;
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    public static final int CHUNK_AREA = CHUNK_SIZE * CHUNK_SIZE;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MODULO = 20183;
+
+    private final int depth;
+    private final int targetX;
+    private final int targetY;
+    // chunk number + 1 per chunk position [chunkY][chunkX], 0 is not created yet
+    private int[][] chunkNumbers = new int[4][];
+    // per chunk number: the position and the erosion levels of the regions
+    private int[] chunkX = new int[16];
+    private int[] chunkY = new int[16];
+    private int[][] erosionLevels = new int[16][];
+    @Getter
+    private int nrChunks = 0;
+
+    public CaveGrid(int depth, int targetX, int targetY) {
+        this.depth = depth;
+        this.targetX = targetX;
+        this.targetY = targetY;
+    }
+
+    private int chunkNumber(int cx, int cy) {
+        if (cy >= chunkNumbers.length || chunkNumbers[cy] == null || cx >= chunkNumbers[cy].length) {
+            return -1;
+        }
+        return chunkNumbers[cy][cx] - 1;
+    }
+
+    private int chunk(int cx, int cy) {
+        int chunkNr = chunkNumber(cx, cy);
+        if (chunkNr < 0) {
+            // create (and compute) the missing chunks it depends on first, row by row
+            for (int j = 0; j <= cy; j++) {
+                for (int i = 0; i <= cx; i++) {
+                    if (chunkNumber(i, j) < 0) {
+                        computeChunk(allocateChunk(i, j));
+                    }
+                }
+            }
+            chunkNr = chunkNumber(cx, cy);
+        }
+        return chunkNr;
+    }
+
+    private int allocateChunk(int cx, int cy) {
+        if (cy >= chunkNumbers.length) {
+            chunkNumbers = Arrays.copyOf(chunkNumbers, Math.max(cy + 1, 2 * chunkNumbers.length));
+        }
+        int[] row = chunkNumbers[cy];
+        if (row == null || cx >= row.length) {
+            row = chunkNumbers[cy] = row == null ? new int[Math.max(cx + 1, 4)] : Arrays.copyOf(row, Math.max(cx + 1, 2 * row.length));
+        }
+        if (nrChunks == chunkX.length) {
+            chunkX = Arrays.copyOf(chunkX, 2 * nrChunks);
+            chunkY = Arrays.copyOf(chunkY, 2 * nrChunks);
+            erosionLevels = Arrays.copyOf(erosionLevels, 2 * nrChunks);
+        }
+        chunkX[nrChunks] = cx;
+        chunkY[nrChunks] = cy;
+        erosionLevels[nrChunks] = new int[CHUNK_AREA];
+        row[cx] = ++nrChunks;
+        return nrChunks - 1;
+    }
+
+    /**
+     * Computes the erosion levels of the chunk row by row, the chunks to the left and above should be computed.
+     */
+    private void computeChunk(int chunkNr) {
+        int[] levels = erosionLevels[chunkNr];
+        int cx = chunkX[chunkNr];
+        int cy = chunkY[chunkNr];
+        int[] left = cx > 0 ? erosionLevels[chunkNumber(cx - 1, cy)] : null;
+        int[] above = cy > 0 ? erosionLevels[chunkNumber(cx, cy - 1)] : null;
+        int x0 = cx << CHUNK_BITS;
+        int y0 = cy << CHUNK_BITS;
+        for (int ly = 0, i = 0; ly < CHUNK_SIZE; ly++) {
+            int y = y0 + ly;
+            for (int lx = 0; lx < CHUNK_SIZE; lx++, i++) {
+                int x = x0 + lx;
+                // the last column of the chunk to the left, the last row of the chunk above (none on the axes)
+                int levelLeft = x == 0 ? 0 : lx > 0 ? levels[i - 1] : left[i + CHUNK_MASK];
+                int levelAbove = y == 0 ? 0 : ly > 0 ? levels[i - CHUNK_SIZE] : above[i + CHUNK_AREA - CHUNK_SIZE];
+                levels[i] = (int) ((geologicalIndex(x, y, levelLeft, levelAbove) + depth) % MODULO);
+            }
+        }
+    }
+
+    /**
+     * Computes all chunks up to the region (maxX, maxY) that are not there yet. The chunks on an anti-diagonal do
+     * not depend on each other: they are computed in parallel, one diagonal (wavefront) after the other.
+     */
+    public void fill(int maxX, int maxY) {
+        int maxCx = maxX >> CHUNK_BITS;
+        int maxCy = maxY >> CHUNK_BITS;
+        List<List<Integer>> diagonals = new ArrayList<>();
+        for (int k = 0; k <= maxCx + maxCy; k++) {
+            diagonals.add(new ArrayList<>());
+        }
+        for (int cy = 0; cy <= maxCy; cy++) {
+            for (int cx = 0; cx <= maxCx; cx++) {
+                if (chunkNumber(cx, cy) < 0) {
+                    diagonals.get(cx + cy).add(allocateChunk(cx, cy));
+                }
+            }
+        }
+        diagonals.forEach(diagonal -> diagonal.parallelStream().forEach(this::computeChunk));
+    }
+
+    /**
+     * @return the tile number of the region (x and y at least 0)
+     */
+    public int tile(int x, int y) {
+        return chunk(x >> CHUNK_BITS, y >> CHUNK_BITS) * CHUNK_AREA + ((y & CHUNK_MASK) << CHUNK_BITS) + (x & CHUNK_MASK);
+    }
+
+    public int x(int tile) {
+        return (chunkX[tile / CHUNK_AREA] << CHUNK_BITS) + (tile & CHUNK_MASK);
+    }
+
+    public int y(int tile) {
+        return (chunkY[tile / CHUNK_AREA] << CHUNK_BITS) + ((tile % CHUNK_AREA) >> CHUNK_BITS);
+    }
+
+    public long geologicalIndex(int x, int y) {
+        return geologicalIndex(x, y, x > 0 ? erosionLevel(x - 1, y) : 0, y > 0 ? erosionLevel(x, y - 1) : 0);
+    }
+
+    /**
+     * The geological index of the region from the erosion levels of the regions to the left and above (only used
+     * off the axes). The target is checked first, it can be on an axis. In long: the cave has no bound.
+     */
+    private long geologicalIndex(int x, int y, int levelLeft, int levelAbove) {
+        if (x == targetX && y == targetY) {
+            return 0;
+        }
+        if (y == 0) {
+            return x * 16807L;
+        }
+        if (x == 0) {
+            return y * 48271L;
+        }
+        return (long) levelLeft * levelAbove;
+    }
+
+    public int erosionLevel(int x, int y) {
+        int tile = tile(x, y);
+        return erosionLevels[tile / CHUNK_AREA][tile % CHUNK_AREA];
+    }
+
+    /**
+     * @return the type of the region: 0 rocky, 1 wet, 2 narrow
+     */
+    public int type(int x, int y) {
+        return erosionLevel(x, y) % 3;
+    }
+
+    public int typeOfTile(int tile) {
+        return erosionLevels[tile / CHUNK_AREA][tile % CHUNK_AREA] % 3;
+    }
+}
+
 @Getter
 @Setter
 @ToString
@@ -69,55 +239,42 @@ class Cave {
     @ToString.Exclude
     public final char TARGET = 'T';
 
-    private char[][] cave;
-    private long[][] erosionLevel;
+    @ToString.Exclude
+    private CaveGrid grid;
     private long depth;
     private Square mouth;
     private Square target;
-    private List<RegionWithGear> listRegionWithGear = new ArrayList<>();
+    @ToString.Exclude
+    private CaveRouter router;
 
     public Cave(Square target, int depth) {
         this.depth = depth;
         this.target = target;
         this.mouth = new Square(0, 0);
-        // use some extra space for the shortest route
-        final double SIZE_FACTOR = 2;
-        cave = new char[(int) (SIZE_FACTOR * target.getX() + 1)][(int) (SIZE_FACTOR * target.getY() + 1)];
-        erosionLevel = new long[(int) (SIZE_FACTOR * target.getX() + 1)][(int) (SIZE_FACTOR * target.getY() + 1)];
-
-        buildCave();
-        createRegionsWithGear();
-    }
-
-    private void buildCave() {
-        // initialise erosion levels
-        for (long[] row : erosionLevel)
-            Arrays.fill(row, -1);
-
-        for (int x = 0; x < cave.length; x++) {
-            for (int y = 0; y < cave[0].length; y++) {
-                cave[x][y] = determineType(x, y);
-            }
-        }
+        // the regions are computed when needed
+        grid = new CaveGrid(depth, target.getX(), target.getY());
     }
 
+    /**
+     * Prints the cave from the mouth to the target.
+     */
     public void print() {
         System.out.print("    ");
-        IntStream.range(0, cave.length)
+        IntStream.rangeClosed(0, target.getX())
                 .forEach(i -> System.out.print(i % 10));
         System.out.println();
 
-        IntStream.range(0, cave[0].length)
+        IntStream.rangeClosed(0, target.getY())
                 .forEach(y -> {
                     System.out.print(String.format("%03d ", y));
-                    IntStream.range(0, cave.length)
+                    IntStream.rangeClosed(0, target.getX())
                             .forEach(x -> {
                                 if (x == 0 && y == 0) {
                                     System.out.print(MOUTH);
                                 } else if (x == target.getX() && y == target.getY()) {
                                     System.out.print(TARGET);
                                 } else {
-                                    System.out.print(cave[x][y]);
+                                    System.out.print(determineType(x, y));
                                 }
                             });
                     System.out.println();
@@ -125,43 +282,16 @@ class Cave {
     }
 
     public long geologicalIndex(int x, int y) {
-        if (x == 0 && y == 0) {
-            return 0;
-        }
-        if (target.getX() == x && target.getY() == y) {
-            return 0;
-        }
-        if (y == 0) {
-            return x * 16807;
-        }
-        if (x == 0) {
-            return y * 48271;
-        }
-        return calculateErosionLevel(x - 1, y) * calculateErosionLevel(x, y - 1);
-    }
-
-    private long calculateErosionLevel(int x, int y) {
-        if (erosionLevel[x][y] == -1) {
-            erosionLevel[x][y] = (geologicalIndex(x, y) + depth) % 20183L;
-        }
-        return erosionLevel[x][y];
+        return grid.geologicalIndex(x, y);
     }
 
     int calculateRiskLevel(int x, int y) {
-        switch (cave[x][y]) {
-            case ROCKY:
-                return 0;
-            case WET:
-                return 1;
-            case NARROW:
-                return 2;
-            default:
-                throw new IllegalArgumentException(String.format("could not determine risk level for x,y: %s,%s", x, y));
-        }
+        return grid.type(x, y);
     }
 
     long calculateRegionRisklevel(int topX, int topY, int bottomX, int bottomY) {
         long sum = 0;
+        grid.fill(bottomX, bottomY);
 
         for (int x = topX; x <= bottomX; x++) {
             for (int y = topY; y <= bottomY; y++) {
@@ -173,7 +303,7 @@ class Cave {
     }
 
     char determineType(int x, int y) {
-        switch ((int) (calculateErosionLevel(x, y) % 3)) {
+        switch (grid.type(x, y)) {
             case 0:
                 return ROCKY;
             case 1:
@@ -185,159 +315,315 @@ class Cave {
         }
     }
 
-    private int calculateCost(RegionWithGear from, RegionWithGear to) {
-        int cost = 1; // default cost if gear from/to is OK
+    private CaveRouter router() {
+        if (router == null) {
+            router = new CaveRouter(grid);
+        }
+        return router;
+    }
 
-        if (!from.getGear().equals(to.getGear())) {
-            cost += 7;
+    /**
+     * @return the state of the region, a region outside the cave (x or y below 0) is not valid
+     */
+    private int state(CaveRouter router, RegionWithGear region) {
+        if (region.getX() < 0 || region.getY() < 0) {
+            throw new IllegalArgumentException("region outside the cave: " + region);
         }
+        return router.state(region);
+    }
 
-        return cost;
+    /**
+     * @return the minutes of the shortest route or INFINITE when dst cannot be reached (its gear is not allowed there)
+     */
+    public int calculateShortestDistance(RegionWithGear src, RegionWithGear dst) {
+        CaveRouter router = router();
+        int minutes = router.shortestDistance(state(router, src), state(router, dst));
+        return minutes < 0 ? INFINITE : minutes;
     }
 
-    private void createRegionsWithGear() {
-        for (int x = 0; x < cave.length; x++) {
-            for (int y = 0; y < cave[0].length; y++) {
-                if (x == 0 && y == 0) {
-                    // mouth
-                    listRegionWithGear.add(new RegionWithGear(x, y, TORCH));
-                } else {
-                    switch (cave[x][y]) {
-                        case ROCKY:
-                            listRegionWithGear.add(new RegionWithGear(x, y, CLIMBING_GEAR));
-                            listRegionWithGear.add(new RegionWithGear(x, y, TORCH));
-                            break;
-                        case WET:
-                            listRegionWithGear.add(new RegionWithGear(x, y, CLIMBING_GEAR));
-                            listRegionWithGear.add(new RegionWithGear(x, y, NEITHER));
-                            break;
-                        case NARROW:
-                            listRegionWithGear.add(new RegionWithGear(x, y, TORCH));
-                            listRegionWithGear.add(new RegionWithGear(x, y, NEITHER));
-                            break;
-                        default:
-                            throw new IllegalArgumentException("unknown element: " + cave[x][y]);
-                    }
-                }
-            }
+    /**
+     * Answers many queries from the same source with one shortest path tree (kept for following calls with the same
+     * source). A destination that cannot be reached (its gear is not allowed there) gets INFINITE.
+     */
+    public int[] calculateShortestDistances(RegionWithGear src, List<RegionWithGear> destinations) {
+        CaveRouter router = router();
+        int srcState = state(router, src);
+        int[] dstStates = destinations.stream()
+                .mapToInt(dst -> state(router, dst))
+                .toArray();
+        return Arrays.stream(dstStates)
+                .map(dst -> router.distanceFrom(srcState, dst))
+                .map(minutes -> minutes < 0 ? INFINITE : minutes)
+                .toArray();
+    }
+
+    /**
+     * @return the regions with gear of a shortest route from src to dst, empty when dst cannot be reached
+     */
+    public List<RegionWithGear> shortestRoute(RegionWithGear src, RegionWithGear dst) {
+        CaveRouter router = router();
+        int dstState = state(router, dst);
+        // the marks of an earlier search would give a stale route
+        if (router.shortestDistance(state(router, src), dstState) < 0) {
+            return new ArrayList<>();
         }
+        return Arrays.stream(router.path(dstState))
+                .mapToObj(router::region)
+                .collect(Collectors.toList());
     }
 
-    public int calculateShortestDistance(RegionWithGear src, RegionWithGear dst) {
-        // use the Dijkstra algorithm
-
-        // create a set with unvisited regions
-        Set<RegionWithGear> unvisitedRegions = new HashSet<>();
-        unvisitedRegions.addAll(listRegionWithGear);
-
-        // create a map with points and (minimum) distance, initially "infinite", except source which has distance 0
-        Map<RegionWithGear, Integer> mapRegionWithDistance = new TreeMap<>();
-        unvisitedRegions.stream()
-                .forEach(ur -> {
-                    if (ur.equals(src)) {
-                        mapRegionWithDistance.put(ur, 0);
-                    } else {
-                        mapRegionWithDistance.put(ur, INFINITE);
-                    }
-                });
+}
 
-        // create a map with the parent
-        Map<RegionWithGear, RegionWithGear> mapParents = new TreeMap<>();
-        // src is its own parent
-        mapParents.put(src, src);
 
-        // remove the source from unvisited nodes
-        unvisitedRegions.removeIf(fn -> fn.equals(src));
+/**
+ * Shortest routes through a cave over the states (x, y, gear), encoded as int: tile number of the region * 3 + gear.
+ * Moving to an adjacent region takes 1 minute and keeps the gear (it should be allowed in both regions),
+ * changing the gear takes 7 minutes and stays in the region (both gears should be allowed there).
+ * <p>
+ * A single query is answered with A* (the Manhattan distance as consistent heuristic), many queries from the same
+ * source with one Dijkstra search that is continued until the queried state is settled: the shortest path tree
+ * is kept between the queries.
+ * The workspace (per chunk of the grid, allocated when the search reaches the chunk) is reused between searches:
+ * a state belongs to the current search when its mark is the search number, so nothing is cleared.
+ */
+class CaveRouter {
+    private static final int NR_GEARS = RegionWithGear.Gear.values().length;
+    private static final int CHUNK_STATES = CaveGrid.CHUNK_AREA * NR_GEARS;
+    private static final int NONE = -1;
+
+    private final CaveGrid grid;
+    // per chunk per state: the minutes from the source, the previous state on the route and the mark
+    private int[][] minutes = new int[16][];
+    private int[][] parent = new int[16][];
+    // 2 * search: reached in the current search, 2 * search + 1: settled (shortest route known)
+    private int[][] mark = new int[16][];
+    private int search = 0;
+    private int source = NONE;
+    // the source of the kept shortest path tree, or NONE when the last search was directed (A*)
+    private int treeSource = NONE;
+    // binary heap of (priority << 32 | state)
+    private long[] heap = new long[1024];
+    private int heapSize;
+
+    public CaveRouter(CaveGrid grid) {
+        this.grid = grid;
+    }
 
-        // start with source
-        RegionWithGear currentRegion = src;
+    public int state(RegionWithGear region) {
+        return grid.tile(region.getX(), region.getY()) * NR_GEARS + region.getGear().ordinal();
+    }
 
-        boolean reachedDestination = false;
-        boolean noRoutePossible = false;
+    public RegionWithGear region(int state) {
+        int tile = state / NR_GEARS;
+        return new RegionWithGear(grid.x(tile), grid.y(tile), RegionWithGear.Gear.values()[state % NR_GEARS]);
+    }
 
-        while (!unvisitedRegions.isEmpty() && !reachedDestination && !noRoutePossible) {
-            if (unvisitedRegions.size() % 100 == 0) {
-                System.out.println("#unvisitedRegions = " + unvisitedRegions.size());
-            }
-            List<RegionWithGear> unvisitedNeighbours = getNeighbours(currentRegion);
-            // remove the neighbours which have already been visited
-            unvisitedNeighbours.removeIf(un -> !unvisitedRegions.contains(un));
-
-            // update the distance to these neighbours if closer through this node
-            final RegionWithGear cr = currentRegion;
-            unvisitedNeighbours
-                    .forEach(un -> {
-                        int currentDistanceToNeighbour = mapRegionWithDistance.get(cr) + calculateCost(cr, un);
-                        if (currentDistanceToNeighbour < mapRegionWithDistance.get(un)) {
-                            mapRegionWithDistance.put(un, currentDistanceToNeighbour);
-                            // add parent
-                            mapParents.put(un, cr);
-                        }
-                    });
-
-            // remove current region from unvisited set
-            unvisitedRegions.remove(currentRegion);
-
-            // check if we are done
-            if (currentRegion.equals(dst)) {
-//                reachedDestination = true;
-            }
+    /**
+     * Rocky (0) does not allow neither (2), wet (1) not the torch (1), narrow (2) not the climbing gear (0).
+     */
+    private int forbiddenGear(int tile) {
+        return 2 - grid.typeOfTile(tile);
+    }
+
+    private boolean isReached(int state) {
+        int chunkNr = state / CHUNK_STATES;
+        return chunkNr < mark.length && mark[chunkNr] != null && mark[chunkNr][state % CHUNK_STATES] >> 1 == search;
+    }
+
+    private boolean isSettled(int state) {
+        return isReached(state) && (mark[state / CHUNK_STATES][state % CHUNK_STATES] & 1) == 1;
+    }
+
+    private int minutes(int state) {
+        return isReached(state) ? minutes[state / CHUNK_STATES][state % CHUNK_STATES] : Integer.MAX_VALUE;
+    }
+
+    private void setMinutes(int state, int value, int parentState) {
+        int chunkNr = state / CHUNK_STATES;
+        if (chunkNr >= minutes.length) {
+            minutes = Arrays.copyOf(minutes, Math.max(chunkNr + 1, 2 * minutes.length));
+            parent = Arrays.copyOf(parent, minutes.length);
+            mark = Arrays.copyOf(mark, minutes.length);
+        }
+        if (minutes[chunkNr] == null) {
+            minutes[chunkNr] = new int[CHUNK_STATES];
+            parent[chunkNr] = new int[CHUNK_STATES];
+            mark[chunkNr] = new int[CHUNK_STATES];
+        }
+        minutes[chunkNr][state % CHUNK_STATES] = value;
+        parent[chunkNr][state % CHUNK_STATES] = parentState;
+        mark[chunkNr][state % CHUNK_STATES] = search << 1;
+    }
+
+    private void settle(int state) {
+        mark[state / CHUNK_STATES][state % CHUNK_STATES] = (search << 1) | 1;
+    }
 
-            noRoutePossible = unvisitedRegions.stream()
-                    .filter(s -> !(mapRegionWithDistance.get(s) == INFINITE))
-                    .count() == 0;
+    private int parent(int state) {
+        return parent[state / CHUNK_STATES][state % CHUNK_STATES];
+    }
 
-            if (!noRoutePossible) {
-                // set new current region to the unvisited node with the smallest distance
-                currentRegion = unvisitedRegions.stream()
-                        .min(Comparator.comparingInt(ur -> mapRegionWithDistance.get(ur))
-                        )
-                        .get();
+    private void newSearch(int src) {
+        if (search == Integer.MAX_VALUE >> 1) {
+            for (int[] chunk : mark) {
+                if (chunk != null) Arrays.fill(chunk, 0);
             }
+            search = 0;
         }
+        search++;
+        heapSize = 0;
+        source = src;
+        setMinutes(src, 0, src);
+    }
 
-        printShortestPath(mapParents, dst, src);
+    private int heuristic(int x, int y, int dstX, int dstY) {
+        return Math.abs(x - dstX) + Math.abs(y - dstY);
+    }
 
-        return mapRegionWithDistance.get(dst);
+    private void push(int priority, int state) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, 2 * heapSize);
+        }
+        long entry = ((long) priority << 32) | state;
+        int i = heapSize++;
+        while (i > 0 && heap[(i - 1) / 2] > entry) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = entry;
     }
 
-    private void printShortestPath(Map<RegionWithGear, RegionWithGear> mapParents, RegionWithGear dst, RegionWithGear src) {
-        System.out.println(mapParents.get(dst) + "->" + dst);
-        if (!src.equals(dst)) {
-            printShortestPath(mapParents, mapParents.get(dst), src);
+    private long pop() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+            if (heap[child] >= last) break;
+            heap[i] = heap[child];
+            i = child;
         }
+        heap[i] = last;
+        return top;
     }
 
-    private boolean inParentChain(Map<RegionWithGear, RegionWithGear> mapParents, RegionWithGear region) {
-        if (mapParents.containsKey(region)) {
-            return true;
-        } else if (region.equals(mapParents.get(region))) {
-            return false;
-        } else if (mapParents.get(region) == null) {
-            return false;
-        } else {
-            return inParentChain(mapParents, mapParents.get(region));
+    /**
+     * A* from src to dst, this drops the kept shortest path tree.
+     *
+     * @return the minutes of the shortest route or -1 when dst cannot be reached
+     */
+    public int shortestDistance(int src, int dst) {
+        if (!isAllowed(src) || !isAllowed(dst)) {
+            return -1;
         }
+        int dstTile = dst / NR_GEARS;
+        int dstX = grid.x(dstTile);
+        int dstY = grid.y(dstTile);
+        treeSource = NONE;
+        newSearch(src);
+        push(heuristic(grid.x(src / NR_GEARS), grid.y(src / NR_GEARS), dstX, dstY), src);
+        return searchUntilSettled(dst, maxMinutes(src, dst), true, dstX, dstY);
     }
 
-    private List<RegionWithGear> getNeighbours(RegionWithGear currentRegion) {
-        List<RegionWithGear> neighbours =
-                listRegionWithGear.stream()
-                        .filter(r -> areNeighbours(currentRegion, r))
-                        .collect(Collectors.toList());
+    /**
+     * Dijkstra from src, continuing the kept shortest path tree when it has the same source.
+     *
+     * @return the minutes of the shortest route or -1 when dst cannot be reached
+     */
+    public int distanceFrom(int src, int dst) {
+        if (!isAllowed(src) || !isAllowed(dst)) {
+            return -1;
+        }
+        if (src != treeSource) {
+            treeSource = src;
+            newSearch(src);
+            push(0, src);
+        }
+        return searchUntilSettled(dst, maxMinutes(src, dst), false, 0, 0);
+    }
 
-        return neighbours;
+    /**
+     * @return false when the gear of the state is not allowed in its region: such a state cannot be reached (and
+     * is no source)
+     */
+    public boolean isAllowed(int state) {
+        return forbiddenGear(state / NR_GEARS) != state % NR_GEARS;
     }
 
-    private boolean areNeighbours(RegionWithGear r1, RegionWithGear r2) {
-        if (r1.getX() == r2.getX() && Math.abs(r1.getY() - r2.getY()) == 1) return true;
-        if (r1.getY() == r2.getY() && Math.abs(r1.getX() - r2.getX()) == 1) return true;
+    /**
+     * An allowed dst can always be reached: per region on a straight route at most a gear change and a move, and a
+     * gear change at dst.
+     *
+     * @return an upper bound of the minutes from src to dst
+     */
+    private int maxMinutes(int src, int dst) {
+        int srcTile = src / NR_GEARS;
+        int dstTile = dst / NR_GEARS;
+        return 8 * heuristic(grid.x(srcTile), grid.y(srcTile), grid.x(dstTile), grid.y(dstTile)) + 7;
+    }
 
-        return false;
+    /**
+     * Searches until dst is settled, or until the lowest priority in the heap is above maxMinutes: the search
+     * stops without growing the (unbounded) grid further, the heap is kept so a kept tree can be continued.
+     */
+    private int searchUntilSettled(int dst, int maxMinutes, boolean directed, int dstX, int dstY) {
+        while (!isSettled(dst) && heapSize > 0 && (int) (heap[0] >>> 32) <= maxMinutes) {
+            int state = (int) pop();
+            // skip outdated heap entries
+            if (isSettled(state)) continue;
+            settle(state);
+
+            int tile = state / NR_GEARS;
+            int gear = state % NR_GEARS;
+            int x = grid.x(tile);
+            int y = grid.y(tile);
+            int d = minutes(state);
+            // change gear: the third gear, the other one is not allowed here
+            int otherGear = NR_GEARS - gear - forbiddenGear(tile);
+            relax(state, tile * NR_GEARS + otherGear, d + 7, directed ? heuristic(x, y, dstX, dstY) : 0);
+            // move with the same gear, the grid grows when needed
+            if (x > 0) move(state, gear, x - 1, y, d + 1, directed, dstX, dstY);
+            move(state, gear, x + 1, y, d + 1, directed, dstX, dstY);
+            if (y > 0) move(state, gear, x, y - 1, d + 1, directed, dstX, dstY);
+            move(state, gear, x, y + 1, d + 1, directed, dstX, dstY);
+        }
+        return isSettled(dst) ? minutes(dst) : -1;
     }
 
-}
+    private void move(int from, int gear, int x, int y, int d, boolean directed, int dstX, int dstY) {
+        int tile = grid.tile(x, y);
+        if (forbiddenGear(tile) != gear) {
+            relax(from, tile * NR_GEARS + gear, d, directed ? heuristic(x, y, dstX, dstY) : 0);
+        }
+    }
 
+    private void relax(int from, int to, int d, int heuristic) {
+        if (d < minutes(to)) {
+            setMinutes(to, d, from);
+            push(d + heuristic, to);
+        }
+    }
+
+    /**
+     * @return the states of the shortest route of the last search from its source to dst (both included),
+     * or an empty array when dst has not been settled by the last search
+     */
+    public int[] path(int dst) {
+        if (!isSettled(dst)) {
+            return new int[0];
+        }
+        int length = 1;
+        for (int state = dst; state != source; state = parent(state)) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int state = dst, i = length - 1; i >= 0; state = parent(state), i--) {
+            path[i] = state;
+        }
+        return path;
+    }
+}
 
 public class Day_22 {
 
@@ -0,0 +1,162 @@
+package com.ing;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * A 2 dimensional grid of cells of a few bits (see {@link CellCodec}), packed row by row in a long[].
+ * A cell does not span 2 longs, so a long holds 64 / bitsPerCell cells.
+ */
+@Getter
+class Grid {
+    private final int width;
+    private final int height;
+    private final CellCodec codec;
+    private final int bitsPerCell;
+    private final int cellsPerWord;
+    private final long cellMask;
+    private final long[] words;
+
+    /**
+     * Maps the characters of a grid (as in the puzzle input) to the small codes 0..n-1 stored in a {@link Grid}.
+     * Code 0 (the first character) is the value of a new grid.
+     */
+    @Getter
+    static class CellCodec {
+        private final String characters;
+        private final int bitsPerCell;
+        // per (ascii) character its code + 1, 0 for an unknown character
+        private final byte[] codes = new byte[128];
+
+        CellCodec(String characters) {
+            if (characters.isEmpty() || characters.length() > 64) {
+                throw new IllegalArgumentException("a codec needs 1 to 64 characters: " + characters);
+            }
+            this.characters = characters;
+            bitsPerCell = Math.max(1, 32 - Integer.numberOfLeadingZeros(characters.length() - 1));
+            for (int i = 0; i < characters.length(); i++) {
+                codes[characters.charAt(i)] = (byte) (i + 1);
+            }
+        }
+
+        public int encode(char c) {
+            int code = c < codes.length ? codes[c] - 1 : -1;
+            if (code < 0) {
+                throw new IllegalArgumentException("unknown cell: " + c + " for codec: " + characters);
+            }
+            return code;
+        }
+
+        public char decode(int code) {
+            return characters.charAt(code);
+        }
+    }
+
+    Grid(int width, int height, CellCodec codec) {
+        this.width = width;
+        this.height = height;
+        this.codec = codec;
+        bitsPerCell = codec.getBitsPerCell();
+        cellsPerWord = Long.SIZE / bitsPerCell;
+        cellMask = (1L << bitsPerCell) - 1;
+        words = new long[(int) (((long) width * height + cellsPerWord - 1) / cellsPerWord)];
+    }
+
+    /**
+     * Copy of the other grid.
+     */
+    Grid(Grid other) {
+        width = other.width;
+        height = other.height;
+        codec = other.codec;
+        bitsPerCell = other.bitsPerCell;
+        cellsPerWord = other.cellsPerWord;
+        cellMask = other.cellMask;
+        words = other.words.clone();
+    }
+
+    public boolean isInside(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    private int index(int x, int y) {
+        // a cell outside would otherwise be a cell of a neighbouring row
+        if (!isInside(x, y)) {
+            throw new ArrayIndexOutOfBoundsException(String.format("[%d][%d] outside the grid of %dx%d", x, y, width, height));
+        }
+        return y * width + x;
+    }
+
+    public int getCode(int x, int y) {
+        int index = index(x, y);
+        return (int) (words[index / cellsPerWord] >>> (index % cellsPerWord * bitsPerCell) & cellMask);
+    }
+
+    public void setCode(int x, int y, int code) {
+        int index = index(x, y);
+        int shift = index % cellsPerWord * bitsPerCell;
+        int word = index / cellsPerWord;
+        words[word] = words[word] & ~(cellMask << shift) | ((long) code << shift);
+    }
+
+    public char get(int x, int y) {
+        return codec.decode(getCode(x, y));
+    }
+
+    public void set(int x, int y, char c) {
+        setCode(x, y, codec.encode(c));
+    }
+
+    public void fill(char c) {
+        int code = codec.encode(c);
+        long word = 0;
+        for (int i = 0; i < cellsPerWord; i++) {
+            word |= (long) code << (i * bitsPerCell);
+        }
+        Arrays.fill(words, word);
+    }
+
+    public int count(char c) {
+        int code = codec.encode(c);
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (getCode(x, y) == code) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the row as characters
+     */
+    public String row(int y) {
+        StringBuilder sb = new StringBuilder(width);
+        for (int x = 0; x < width; x++) {
+            sb.append(get(x, y));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Grid)) return false;
+        Grid other = (Grid) o;
+        return width == other.width && height == other.height && codec.getCharacters().equals(other.codec.getCharacters())
+                && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * width + height) + Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        return "Grid(width=" + width + ", height=" + height + ", codec=" + codec.getCharacters() + ")";
+    }
+}
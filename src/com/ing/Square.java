@@ -0,0 +1,45 @@
+package com.ing;
+
+import lombok.Data;
+
+@Data
+public class Square implements Comparable {
+    private int x;
+    private int y;
+
+    public Square(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    @Override
+    public int compareTo(Object o) {
+        Square other = (Square) o;
+        if (this.y == other.y) {
+            return x - other.x;
+        } else {
+            return y - other.y;
+        }
+    }
+
+    Square nextSquare(Direction d) {
+        return switch (d) {
+            case W -> new Square(x - 1, y);
+            case E -> new Square(x + 1, y);
+            case S -> new Square(x, y + 1);
+            case N -> new Square(x, y - 1);
+        };
+    }
+
+    Square nextSquare(char d) {
+        return nextSquare(Direction.valueOf(String.valueOf(d)));
+    }
+
+    enum Direction {
+        N,
+        S,
+        E,
+        W;
+    }
+
+}